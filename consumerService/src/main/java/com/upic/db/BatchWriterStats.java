@@ -0,0 +1,130 @@
+package com.upic.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Batch fill, flush-reason and outcome counters for {@link DynamoDBWriter}, readable over JMX
+ * (e.g. jconsole, or a JMX exporter sidecar). Outcomes are counted here rather than logged,
+ * because they are recorded on the async client's event loop.
+ */
+public class BatchWriterStats implements BatchWriterStatsMXBean {
+  enum FlushReason { FULL, LINGER, IMMEDIATE }
+
+  private final int maxBatchSize;
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder items = new LongAdder();
+  private final LongAdder fullFlushes = new LongAdder();
+  private final LongAdder lingerFlushes = new LongAdder();
+  private final LongAdder immediateFlushes = new LongAdder();
+  private final LongAdder itemsWritten = new LongAdder();
+  private final LongAdder itemsRetried = new LongAdder();
+  private final LongAdder itemsRejected = new LongAdder();
+  private final LongAdder itemsFailed = new LongAdder();
+  private final AtomicLongArray shardLingerMicros;
+
+  BatchWriterStats(int shards, int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+    this.shardLingerMicros = new AtomicLongArray(shards);
+  }
+
+  /**
+   * Register under {@code com.upic:type=BatchWriter}; failure only costs the JMX view.
+   */
+  void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("com.upic:type=BatchWriter"));
+    } catch (Exception e) {
+      System.err.println("[!] Could not register batch writer MBean: " + e.getMessage());
+    }
+  }
+
+  void recordBatch(int shard, int size, FlushReason reason, long lingerNanos) {
+    batches.increment();
+    items.add(size);
+    switch (reason) {
+      case FULL: fullFlushes.increment(); break;
+      case LINGER: lingerFlushes.increment(); break;
+      default: immediateFlushes.increment(); break;
+    }
+    shardLingerMicros.set(shard, lingerNanos / 1000);
+  }
+
+  void recordWritten(int count) {
+    itemsWritten.add(count);
+  }
+
+  void recordRetry(int count) {
+    itemsRetried.add(count);
+  }
+
+  void recordRejected(int count) {
+    itemsRejected.add(count);
+  }
+
+  void recordFailed(int count) {
+    itemsFailed.add(count);
+  }
+
+  @Override
+  public long getBatches() {
+    return batches.sum();
+  }
+
+  @Override
+  public long getItems() {
+    return items.sum();
+  }
+
+  @Override
+  public double getFillRatio() {
+    long count = batches.sum();
+    return count == 0 ? 0 : (double) items.sum() / (count * (double) maxBatchSize);
+  }
+
+  @Override
+  public long getFullFlushes() {
+    return fullFlushes.sum();
+  }
+
+  @Override
+  public long getLingerFlushes() {
+    return lingerFlushes.sum();
+  }
+
+  @Override
+  public long getImmediateFlushes() {
+    return immediateFlushes.sum();
+  }
+
+  @Override
+  public long getItemsWritten() {
+    return itemsWritten.sum();
+  }
+
+  @Override
+  public long getItemsRetried() {
+    return itemsRetried.sum();
+  }
+
+  @Override
+  public long getItemsRejected() {
+    return itemsRejected.sum();
+  }
+
+  @Override
+  public long getItemsFailed() {
+    return itemsFailed.sum();
+  }
+
+  @Override
+  public long[] getShardLingerMicros() {
+    long[] lingers = new long[shardLingerMicros.length()];
+    for (int i = 0; i < lingers.length; i++) {
+      lingers[i] = shardLingerMicros.get(i);
+    }
+    return lingers;
+  }
+}
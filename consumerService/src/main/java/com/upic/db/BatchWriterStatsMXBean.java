@@ -0,0 +1,56 @@
+package com.upic.db;
+
+/**
+ * JMX view of the DynamoDB batch writer, registered as {@code com.upic:type=BatchWriter}.
+ */
+public interface BatchWriterStatsMXBean {
+  long getBatches();
+
+  long getItems();
+
+  /**
+   * Average items per batch divided by the 25-item maximum.
+   */
+  double getFillRatio();
+
+  /**
+   * Batches sent because they reached 25 items.
+   */
+  long getFullFlushes();
+
+  /**
+   * Batches sent because the linger ran out before they filled.
+   */
+  long getLingerFlushes();
+
+  /**
+   * Batches sent at once because traffic was too slow to fill them within the linger cap.
+   */
+  long getImmediateFlushes();
+
+  /**
+   * Items DynamoDB has written.
+   */
+  long getItemsWritten();
+
+  /**
+   * Items resent after being left unprocessed or after a throttling, 5xx or connection error,
+   * counted once per resend.
+   */
+  long getItemsRetried();
+
+  /**
+   * Items dropped at once because DynamoDB refused their batch with a non-retryable error.
+   */
+  long getItemsRejected();
+
+  /**
+   * Items given up on after the last retry.
+   */
+  long getItemsFailed();
+
+  /**
+   * The linger each shard used for its last batch, in microseconds.
+   */
+  long[] getShardLingerMicros();
+}
@@ -2,40 +2,163 @@ package com.upic.db;
 
 import com.upic.model.LiftRide;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
 import java.util.*;
 import java.util.concurrent.*;
 
+/**
+ * Buffers lift ride items and writes them to DynamoDB in batches.
+ *
+ * Items are spread over a pool of writer shards by skierID, each with its own bounded queue
+ * and thread that cuts batches. Batches go out on the async client, so a shard thread hands a
+ * batch off and goes straight back to its queue; up to -Ddynamodb.maxInFlightBatches requests
+ * are outstanding at once, and a shard waits for a slot when they all are. The shard count and
+ * per-shard queue size are set with -Ddynamodb.writerShards and -Ddynamodb.writerQueueCapacity.
+ *
+ * Each skier's rides are written in arrival order: a shard holds a ride back while another ride
+ * of the same skier is in the batch being cut or still in flight, so a skier has at most one
+ * ride outstanding and batches can still be pipelined across skiers. This also keeps two rides
+ * with the same primary key (a skier has only {@link DateKeys#SHARD_COUNT} dateKeys per day) out
+ * of one batch, which DynamoDB would reject as a whole.
+ *
+ * A shard cuts a batch when it has 25 items or its linger runs out. The linger adapts to the
+ * shard's arrival rate (a moving average over recent batches): if the rest of the batch is
+ * expected within -Ddynamodb.maxLingerMs the shard waits for it, otherwise it sends what it has
+ * at once, so light traffic is not delayed and heavy traffic goes out in full batches. With
+ * -Ddynamodb.adaptiveLinger=false every partial batch waits the full maxLingerMs. Fill ratio and
+ * flush reasons are exported over JMX by {@link BatchWriterStats}.
+ *
+ * The rate items are sent at is capped by a {@link WriteRateController}, which backs off when
+ * DynamoDB throttles (ProvisionedThroughputExceededException, or many unprocessed items) and
+ * climbs back as batches succeed. Its ceiling and floor are -Ddynamodb.maxWriteRate and
+ * -Ddynamodb.minWriteRate, in items per second. The consumer subscribes with
+ * {@link #addThrottleListener} to stop taking messages while it is throttled.
+ *
+ * Items DynamoDB leaves unprocessed, and batches that fail with a throttling error, a 5xx or
+ * no response at all, are retried after an exponential backoff with full jitter, for up to
+ * MAX_ATTEMPTS requests. Only then are the rides reported {@link Outcome#FAILED}. Any other
+ * error (e.g. ValidationException) would fail the same way again, so its rides are reported
+ * {@link Outcome#REJECTED} at once.
+ *
+ * Every item carries a {@link WriteCallback}, so the consumer can ack the message only once
+ * the item is in DynamoDB.
+ */
 public class DynamoDBWriter {
   private static final String TABLE_NAME = "LiftRides";
-  private static final DynamoDbClient dynamoDbClient;
+  private static final DynamoDbClient dynamoDbClient; // counter and sketch flushers
+  private static final DynamoDbAsyncClient asyncClient; // batch writes
+  private static final VerticalAggregator verticalTotals;
+  private static final SkierCountSketches skierCounts;
 
   // Limit batch size to DynamoDB max batch (25) and queue size to prevent OOM
   private static final int BATCH_SIZE = 25;
-  private static final int MAX_QUEUE_CAPACITY = 2000;
-  private static final BlockingQueue<Map<String, AttributeValue>> bufferQueue = new LinkedBlockingQueue<>(MAX_QUEUE_CAPACITY);
+  private static final int WRITER_SHARDS = Math.max(1, Integer.getInteger("dynamodb.writerShards", 8));
+  private static final int MAX_QUEUE_CAPACITY = Integer.getInteger("dynamodb.writerQueueCapacity", 2000);
+  private static final int MAX_IN_FLIGHT_BATCHES = Math.max(1, Integer.getInteger("dynamodb.maxInFlightBatches", 32));
+  private static final long MAX_LINGER_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(Math.max(0, Long.getLong("dynamodb.maxLingerMs", 20)));
+  private static final boolean ADAPTIVE_LINGER =
+      Boolean.parseBoolean(System.getProperty("dynamodb.adaptiveLinger", "true"));
+  // weight of the latest batch in a shard's arrival-rate average
+  private static final double RATE_SMOOTHING = 0.2;
+  private static final WriteRateController rateController = new WriteRateController(
+      Integer.getInteger("dynamodb.minWriteRate", BATCH_SIZE),
+      Integer.getInteger("dynamodb.maxWriteRate", 10000),
+      Integer.getInteger("dynamodb.writeRateIncreasePerSec", 500),
+      Long.getLong("dynamodb.throttleCooldownMs", 2000));
+  // retry schedule for unprocessed items: 25 ms, 50 ms, ... capped at 5 s, each with full jitter
+  private static final int MAX_ATTEMPTS = 8;
+  private static final long BASE_BACKOFF_MS = 25;
+  private static final long MAX_BACKOFF_MS = 5000;
+  private static final List<BlockingQueue<PendingWrite>> shardQueues = new ArrayList<>();
+  private static final BatchWriterStats stats = new BatchWriterStats(WRITER_SHARDS, BATCH_SIZE);
+  // skiers with a ride sent and not yet written or failed; only that skier's shard adds them
+  private static final Set<Integer> inFlightSkiers = ConcurrentHashMap.newKeySet();
+  // how often a shard with held-back rides checks whether their skiers are free
+  private static final long HELD_BACK_RECHECK_MS = 5;
+  // one permit per outstanding batch, held across its retries
+  private static final Semaphore inFlightBatches = new Semaphore(MAX_IN_FLIGHT_BATCHES);
+  private static final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "dynamodb-write-retry");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   static {
     dynamoDbClient = DynamoDbClient.builder()
         .region(Region.US_WEST_2)
         .credentialsProvider(DefaultCredentialsProvider.create())
+        .httpClientBuilder(ApacheHttpClient.builder().maxConnections(16))
         .build();
+    asyncClient = DynamoDbAsyncClient.builder()
+        .region(Region.US_WEST_2)
+        .credentialsProvider(DefaultCredentialsProvider.create())
+        .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(MAX_IN_FLIGHT_BATCHES))
+        .build();
+    verticalTotals = new VerticalAggregator(dynamoDbClient);
+    skierCounts = new SkierCountSketches(dynamoDbClient);
+
+    stats.register();
+    rateController.register();
+
+    for (int shard = 0; shard < WRITER_SHARDS; shard++) {
+      BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>(MAX_QUEUE_CAPACITY);
+      shardQueues.add(queue);
+      int shardIndex = shard;
+      Thread batchWriterThread = new Thread(() -> batchWriter(shardIndex, queue), "dynamodb-writer-" + shard);
+      batchWriterThread.setDaemon(true);
+      batchWriterThread.start();
+    }
+    System.out.println("[*] DynamoDB writer started with " + WRITER_SHARDS + " shards, up to "
+        + MAX_IN_FLIGHT_BATCHES + " batches in flight, linger up to "
+        + TimeUnit.NANOSECONDS.toMillis(MAX_LINGER_NANOS) + " ms" + (ADAPTIVE_LINGER ? " (adaptive)" : "")
+        + ", at most " + Math.round(rateController.getMaxRate()) + " items/s");
+  }
+
+  /**
+   * Be told when writes are being throttled and when they have recovered.
+   */
+  public static void addThrottleListener(WriteRateController.Listener listener) {
+    rateController.addListener(listener);
+  }
+
+  /**
+   * What happened to a ride handed to {@link #writeLiftRide}.
+   */
+  public enum Outcome {
+    /** In DynamoDB, and added to the skier's vertical totals. */
+    WRITTEN,
+    /** Not written, but may succeed if tried again later. */
+    FAILED,
+    /** Refused by DynamoDB in a way that would repeat on every attempt. */
+    REJECTED
+  }
 
-    Thread batchWriterThread = new Thread(DynamoDBWriter::batchWriter);
-    batchWriterThread.setDaemon(true);
-    batchWriterThread.start();
+  /**
+   * Told what happened to a ride handed to {@link #writeLiftRide}.
+   */
+  public interface WriteCallback {
+    void completed(Outcome outcome);
   }
 
   /**
-   * Convert lift ride data into a DynamoDB item and enqueue it.
+   * Convert lift ride data into a DynamoDB item and enqueue it. A written ride is counted
+   * towards the resort day's unique-skier sketch and the skier's vertical totals, and
+   * {@code callback} is told once the totals have been flushed (or as soon as the write failed).
    */
-  public static void writeLiftRide(int skierID, int resortID, String seasonID, String dayID, LiftRide liftRide) {
+  public static void writeLiftRide(int skierID, int resortID, String seasonID, String dayID, LiftRide liftRide,
+      WriteCallback callback) {
     try {
-      // As seasonID and dayID is fixed, add a random number to avoid hot partition
-      String dateKey = seasonID + "_" + dayID + "_" + getRandomSuffix();
+      // As seasonID and dayID is fixed, add a random shard suffix to avoid hot partition
+      String dateKey = DateKeys.randomShardKey(seasonID, dayID);
       // create seasonDaySkier combined-key for GSI
       String seasonDaySkier = seasonID + "_" + dayID + "_" + skierID;
 
@@ -53,66 +176,335 @@ public class DynamoDBWriter {
 
       // put combined sort key for GSI
       item.put("seasonDaySkier", AttributeValue.builder().s(seasonDaySkier).build());
+      // marks the ride as counted in the vertical totals, see VerticalBackfill
+      item.put("writtenAt", AttributeValue.builder().n(String.valueOf(System.currentTimeMillis())).build());
 
-      // Block if queue is full (backpressure)
-      bufferQueue.put(Collections.unmodifiableMap(item));
+      // Block if the skier's shard is full (backpressure)
+      shardQueues.get(Math.floorMod(skierID, WRITER_SHARDS)).put(new PendingWrite(
+          Collections.unmodifiableMap(item), skierID, resortID, seasonID, dayID, vertical, callback));
     } catch (Exception e) {
       System.err.println("[✘] Failed to enqueue item: " + e.getMessage());
+      callback.completed(Outcome.FAILED);
     }
   }
 
   /**
-   * Continuously consume buffered items and write to DynamoDB in batches.
+   * Continuously cut one shard's buffered items into batches and send them.
    */
-  private static void batchWriter() {
-    List<Map<String, AttributeValue>> batch = new ArrayList<>();
-
+  private static void batchWriter(int shard, BlockingQueue<PendingWrite> bufferQueue) {
+    HeldBack heldBack = new HeldBack();
+    double itemsPerNano = 0;
+    long lastCut = System.nanoTime();
     while (true) {
+      Batch batch = new Batch();
       try {
-        // Block until first item is available
-        Map<String, AttributeValue> first = bufferQueue.take();
-        batch.add(first);
-        bufferQueue.drainTo(batch, BATCH_SIZE - 1);
-
-        List<WriteRequest> writeRequests = new ArrayList<>();
-        for (Map<String, AttributeValue> item : batch) {
-          if (item != null && !item.isEmpty()) {
-            PutRequest putRequest = PutRequest.builder().item(item).build();
-            writeRequests.add(WriteRequest.builder().putRequest(putRequest).build());
+        heldBack.release(batch);
+        if (batch.isEmpty()) {
+          // Block until first item is available; with rides held back, wake up to retry them
+          PendingWrite first = heldBack.isEmpty() ? bufferQueue.take()
+              : bufferQueue.poll(HELD_BACK_RECHECK_MS, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+          batch.offer(first, heldBack);
+          if (batch.isEmpty()) {
+            continue;
           }
         }
+        batch.drain(bufferQueue, heldBack);
 
-        Map<String, List<WriteRequest>> requestItems = new HashMap<>();
-        requestItems.put(TABLE_NAME, writeRequests);
+        long linger = 0;
+        BatchWriterStats.FlushReason reason = BatchWriterStats.FlushReason.FULL;
+        if (!batch.isFull()) {
+          linger = lingerNanos(batch.size(), itemsPerNano);
+          long deadline = System.nanoTime() + linger;
+          long remaining = linger;
+          while (!batch.isFull() && remaining > 0) {
+            PendingWrite next = bufferQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+              break;
+            }
+            batch.offer(next, heldBack);
+            batch.drain(bufferQueue, heldBack);
+            remaining = deadline - System.nanoTime();
+          }
+          if (!batch.isFull()) {
+            reason = linger > 0 ? BatchWriterStats.FlushReason.LINGER : BatchWriterStats.FlushReason.IMMEDIATE;
+          }
+        }
 
-        BatchWriteItemRequest batchRequest = BatchWriteItemRequest.builder()
-            .requestItems(requestItems)
-            .build();
+        // arrival rate since the previous cut, including any time spent idle or waiting for a slot
+        long now = System.nanoTime();
+        double observed = batch.size() / (double) Math.max(1, now - lastCut);
+        itemsPerNano = itemsPerNano == 0 ? observed : RATE_SMOOTHING * observed + (1 - RATE_SMOOTHING) * itemsPerNano;
+        lastCut = now;
+        stats.recordBatch(shard, batch.size(), reason, linger);
 
-        BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(batchRequest);
+        // pace to the controller's rate before taking a slot, so waiting does not hold one
+        long pace = rateController.reserve(batch.size());
+        if (pace > 0) {
+          TimeUnit.NANOSECONDS.sleep(pace);
+        }
+        inFlightBatches.acquire();
+        for (PendingWrite write : batch.writes) {
+          inFlightSkiers.add(write.skierID);
+        }
+        send(batch.writes, 0);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        fail(batch.writes, Outcome.FAILED);
+        // not sent, and their skiers may have other rides still in flight
+        for (PendingWrite write : heldBack.writes) {
+          write.callback.completed(Outcome.FAILED);
+        }
+        return;
+      }
+    }
+  }
 
-        int successCount = batch.size() - response.unprocessedItems().getOrDefault(TABLE_NAME, List.of()).size();
-        System.out.println("[✔] Batch wrote " + successCount + " items to DynamoDB");
+  /**
+   * How long a batch of {@code size} items should wait for more, given the shard's arrival rate.
+   */
+  private static long lingerNanos(int size, double itemsPerNano) {
+    if (!ADAPTIVE_LINGER) {
+      return MAX_LINGER_NANOS;
+    }
+    if (itemsPerNano <= 0) {
+      return 0;
+    }
+    double timeToFill = (BATCH_SIZE - size) / itemsPerNano;
+    // too slow to fill within the cap: waiting would only add latency
+    return timeToFill <= MAX_LINGER_NANOS ? (long) timeToFill : 0;
+  }
 
-        // Retry unprocessed items if necessary (simple one retry)
-        List<WriteRequest> unprocessed = response.unprocessedItems().get(TABLE_NAME);
-        if (unprocessed != null && !unprocessed.isEmpty()) {
-          System.out.println("[!] Retrying " + unprocessed.size() + " unprocessed items");
-          Map<String, List<WriteRequest>> retryMap = new HashMap<>();
-          retryMap.put(TABLE_NAME, unprocessed);
-          dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder().requestItems(retryMap).build());
+  /**
+   * Send one BatchWriteItem for {@code writes}; the caller holds an in-flight permit, which is
+   * released once every write has succeeded or failed.
+   */
+  private static void send(List<PendingWrite> writes, int attempt) {
+    List<WriteRequest> writeRequests = new ArrayList<>(writes.size());
+    for (PendingWrite write : writes) {
+      PutRequest putRequest = PutRequest.builder().item(write.item).build();
+      writeRequests.add(WriteRequest.builder().putRequest(putRequest).build());
+    }
+    BatchWriteItemRequest batchRequest = BatchWriteItemRequest.builder()
+        .requestItems(Map.of(TABLE_NAME, writeRequests))
+        .build();
+
+    try {
+      asyncClient.batchWriteItem(batchRequest).whenComplete((response, error) -> {
+        if (error != null) {
+          onError(writes, attempt, error);
+          return;
         }
+        List<PendingWrite> unprocessed = complete(writes, response.unprocessedItems().get(TABLE_NAME));
+        rateController.onBatch(writes.size(), unprocessed.size());
+        stats.recordWritten(writes.size() - unprocessed.size());
+        if (unprocessed.isEmpty()) {
+          inFlightBatches.release();
+        } else {
+          retryOrFail(unprocessed, attempt);
+        }
+      });
+    } catch (Exception e) {
+      onError(writes, attempt, e);
+    }
+  }
+
+  /**
+   * A BatchWriteItem failed as a whole: retry it if the error is transient, otherwise reject
+   * its rides straight away.
+   */
+  private static void onError(List<PendingWrite> writes, int attempt, Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    if (cause instanceof AwsServiceException && ((AwsServiceException) cause).isThrottlingException()) {
+      rateController.onThrottled();
+    }
+    if (isRetryable(cause)) {
+      retryOrFail(writes, attempt);
+    } else {
+      System.err.println("[✘] Rejecting " + writes.size() + " items, error is not retryable: " + cause.getMessage());
+      stats.recordRejected(writes.size());
+      fail(writes, Outcome.REJECTED);
+      inFlightBatches.release();
+    }
+  }
+
+  /**
+   * Throttling, server errors and errors without a response (connection, timeout) may pass on
+   * a later attempt; any other service error, e.g. ValidationException, will not.
+   */
+  private static boolean isRetryable(Throwable cause) {
+    if (cause instanceof AwsServiceException) {
+      AwsServiceException serviceError = (AwsServiceException) cause;
+      return serviceError.isThrottlingException() || serviceError.statusCode() >= 500;
+    }
+    return cause instanceof SdkClientException;
+  }
 
-        batch.clear();
-      } catch (Exception e) {
-        System.err.println("[✘] Batch write failed: " + e.getMessage());
-        batch.clear();
+  private static void retryOrFail(List<PendingWrite> writes, int attempt) {
+    int next = attempt + 1;
+    if (next >= MAX_ATTEMPTS) {
+      System.err.println("[✘] Giving up on " + writes.size() + " items after " + MAX_ATTEMPTS + " attempts");
+      stats.recordFailed(writes.size());
+      fail(writes, Outcome.FAILED);
+      inFlightBatches.release();
+      return;
+    }
+    long backoffMs = ThreadLocalRandom.current().nextLong(Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << attempt) + 1);
+    // retries count against the write rate too
+    backoffMs = Math.max(backoffMs, TimeUnit.NANOSECONDS.toMillis(rateController.reserve(writes.size())));
+    stats.recordRetry(writes.size());
+    retryTimer.schedule(() -> send(writes, next), backoffMs, TimeUnit.MILLISECONDS);
+  }
+
+  private static void fail(List<PendingWrite> writes, Outcome outcome) {
+    for (PendingWrite write : writes) {
+      inFlightSkiers.remove(write.skierID);
+      write.callback.completed(outcome);
+    }
+  }
+
+  /**
+   * Report the writes of a batch that DynamoDB processed.
+   *
+   * @return the writes it left unprocessed
+   */
+  private static List<PendingWrite> complete(List<PendingWrite> batch, List<WriteRequest> unprocessed) {
+    // a batch holds at most one ride per skier, so the skierID identifies the ride
+    Set<Integer> left = new HashSet<>();
+    if (unprocessed != null) {
+      for (WriteRequest request : unprocessed) {
+        left.add(Integer.parseInt(request.putRequest().item().get("skierID").n()));
+      }
+    }
+    List<PendingWrite> remaining = new ArrayList<>();
+    for (PendingWrite write : batch) {
+      if (left.contains(write.skierID)) {
+        remaining.add(write);
+        continue;
       }
+      inFlightSkiers.remove(write.skierID);
+      // unique-skier sketch for GET .../day/{dayID}/skiers/count
+      skierCounts.add(write.skierID, write.resortID, write.seasonID, write.dayID);
+      // pre-aggregated totals for GET /skiers/{skierID}/vertical; the ride is acked once counted
+      verticalTotals.add(write.skierID, write.resortID, write.seasonID, write.vertical,
+          () -> write.callback.completed(Outcome.WRITTEN));
     }
+    return remaining;
   }
 
-  private static String getRandomSuffix() {
-    int rand = ThreadLocalRandom.current().nextInt(10); // Generates 0–9
-    return "r" + rand;
+  /**
+   * One queued item and what to do once it has been written.
+   */
+  private static final class PendingWrite {
+    final Map<String, AttributeValue> item;
+    final int skierID;
+    final int resortID;
+    final String seasonID;
+    final String dayID;
+    final int vertical;
+    final WriteCallback callback;
+
+    PendingWrite(Map<String, AttributeValue> item, int skierID, int resortID, String seasonID, String dayID,
+        int vertical, WriteCallback callback) {
+      this.item = item;
+      this.skierID = skierID;
+      this.resortID = resortID;
+      this.seasonID = seasonID;
+      this.dayID = dayID;
+      this.vertical = vertical;
+      this.callback = callback;
+    }
+  }
+
+  /**
+   * A batch being cut: at most 25 rides, no two of the same skier.
+   */
+  private static final class Batch {
+    final List<PendingWrite> writes = new ArrayList<>(BATCH_SIZE);
+    private final Set<Integer> skiers = new HashSet<>();
+
+    int size() {
+      return writes.size();
+    }
+
+    boolean isEmpty() {
+      return writes.isEmpty();
+    }
+
+    boolean isFull() {
+      return writes.size() >= BATCH_SIZE;
+    }
+
+    boolean canTake(PendingWrite write) {
+      return !skiers.contains(write.skierID) && !inFlightSkiers.contains(write.skierID);
+    }
+
+    void add(PendingWrite write) {
+      writes.add(write);
+      skiers.add(write.skierID);
+    }
+
+    /**
+     * Add a newly queued ride, or hold it back if it has to wait for an earlier ride of its skier.
+     */
+    void offer(PendingWrite write, HeldBack heldBack) {
+      if (heldBack.holds(write.skierID) || !canTake(write)) {
+        heldBack.add(write);
+      } else {
+        add(write);
+      }
+    }
+
+    /**
+     * Offer whatever is queued, up to the batch's free space.
+     */
+    void drain(BlockingQueue<PendingWrite> queue, HeldBack heldBack) {
+      List<PendingWrite> drained = new ArrayList<>(BATCH_SIZE - writes.size());
+      queue.drainTo(drained, BATCH_SIZE - writes.size());
+      for (PendingWrite write : drained) {
+        offer(write, heldBack);
+      }
+    }
+  }
+
+  /**
+   * Rides of one shard waiting for an earlier ride of the same skier, oldest first.
+   */
+  private static final class HeldBack {
+    final Deque<PendingWrite> writes = new ArrayDeque<>();
+    private final Map<Integer, Integer> skiers = new HashMap<>();
+
+    boolean isEmpty() {
+      return writes.isEmpty();
+    }
+
+    boolean holds(int skierID) {
+      return skiers.containsKey(skierID);
+    }
+
+    void add(PendingWrite write) {
+      writes.add(write);
+      skiers.merge(write.skierID, 1, Integer::sum);
+    }
+
+    /**
+     * Move the held rides whose skier is free into {@code batch}, keeping each skier's order.
+     */
+    void release(Batch batch) {
+      Set<Integer> blocked = new HashSet<>();
+      Iterator<PendingWrite> it = writes.iterator();
+      while (it.hasNext() && !batch.isFull()) {
+        PendingWrite write = it.next();
+        if (blocked.contains(write.skierID) || !batch.canTake(write)) {
+          blocked.add(write.skierID);
+          continue;
+        }
+        it.remove();
+        skiers.computeIfPresent(write.skierID, (skier, count) -> count == 1 ? null : count - 1);
+        batch.add(write);
+      }
+    }
   }
-}
\ No newline at end of file
+}
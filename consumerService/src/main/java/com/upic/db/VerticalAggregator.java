@@ -0,0 +1,205 @@
+package com.upic.db;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maintains pre-aggregated vertical totals in the SkierVerticals table, so the server can read
+ * a skier's season total with one GetItem instead of summing every ride.
+ *
+ * Each ride adds to two counters: the skier's season total (sort key {@code <season>}) and the
+ * skier's total at the resort ({@code <season>#r<resortID>}). Deltas are merged in memory and
+ * flushed every -Dvertical.flushIntervalMs (default 250) as atomic {@code ADD} updates, so a
+ * skier with several rides in an interval costs one write per counter. A failed update is
+ * merged back and retried on the next flush.
+ *
+ * A ride is only reported counted, and its message acked, once both of its counters have been
+ * flushed. A crash or restart before that leaves the message unacked, so the broker redelivers
+ * it and the ride is counted then; a shutdown hook flushes what is pending first. ADD is not
+ * idempotent, so a crash in the short gap between an update and the ack still counts those
+ * rides twice. Rides written before the totals existed are added once by
+ * {@link VerticalBackfill}.
+ */
+public class VerticalAggregator {
+  public static final String TABLE_NAME = "SkierVerticals";
+
+  private static final long FLUSH_INTERVAL_MS = Long.getLong("vertical.flushIntervalMs", 250);
+  private static final int FLUSH_THREADS = 8;
+
+  private final DynamoDbClient dynamoDbClient;
+  private final ConcurrentHashMap<CounterKey, Delta> pending = new ConcurrentHashMap<>();
+  private final ExecutorService flushPool = Executors.newFixedThreadPool(FLUSH_THREADS, r -> {
+    Thread thread = new Thread(r, "vertical-flush");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public VerticalAggregator(DynamoDbClient dynamoDbClient) {
+    this.dynamoDbClient = dynamoDbClient;
+
+    Thread flusherThread = new Thread(this::flushLoop, "vertical-flusher");
+    flusherThread.setDaemon(true);
+    flusherThread.start();
+
+    // the rides behind pending deltas are not acked yet; count them while the channels are open
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        flush();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        System.err.println("[✘] Final vertical flush failed: " + e.getMessage());
+      }
+    }, "vertical-final-flush"));
+  }
+
+  /**
+   * Count one ride towards the skier's season and resort totals.
+   *
+   * @param onCounted run once both totals have been updated in DynamoDB
+   */
+  public void add(int skierID, int resortID, String seasonID, int vertical, Runnable onCounted) {
+    CountedRide ride = new CountedRide(onCounted);
+    addTo(new CounterKey(skierID, seasonID), vertical, ride);
+    addTo(new CounterKey(skierID, seasonID + "#r" + resortID), vertical, ride);
+  }
+
+  private void addTo(CounterKey key, int vertical, CountedRide ride) {
+    // compute() is atomic with remove(), so a ride lands either in this flush or the next one
+    pending.compute(key, (k, delta) -> (delta == null ? new Delta() : delta).add(vertical, ride));
+  }
+
+  private void flushLoop() {
+    while (true) {
+      try {
+        Thread.sleep(FLUSH_INTERVAL_MS);
+        flush();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        System.err.println("[✘] Vertical flush failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private void flush() throws InterruptedException {
+    List<Future<?>> updates = new ArrayList<>();
+    for (CounterKey key : pending.keySet()) {
+      // once removed, the delta belongs to this flush
+      Delta delta = pending.remove(key);
+      if (delta != null) {
+        updates.add(flushPool.submit(() -> update(key, delta)));
+      }
+    }
+    for (Future<?> update : updates) {
+      try {
+        update.get();
+      } catch (ExecutionException e) {
+        // update() handles its own failures
+      }
+    }
+    if (!updates.isEmpty()) {
+      System.out.println("[✔] Flushed " + updates.size() + " vertical counters");
+    }
+  }
+
+  private void update(CounterKey key, Delta delta) {
+    try {
+      dynamoDbClient.updateItem(UpdateItemRequest.builder()
+          .tableName(TABLE_NAME)
+          .key(Map.of(
+              "skierID", AttributeValue.builder().n(String.valueOf(key.skierID)).build(),
+              "totalKey", AttributeValue.builder().s(key.totalKey).build()))
+          .updateExpression("ADD totalVertical :v, rides :n")
+          .expressionAttributeValues(Map.of(
+              ":v", AttributeValue.builder().n(String.valueOf(delta.vertical)).build(),
+              ":n", AttributeValue.builder().n(String.valueOf(delta.rides)).build()))
+          .build());
+    } catch (Exception e) {
+      System.err.println("[!] Vertical update failed, retrying next flush: " + e.getMessage());
+      pending.compute(key, (k, newer) -> newer == null ? delta : newer.absorb(delta));
+      return;
+    }
+    for (CountedRide ride : delta.waiting) {
+      ride.counterFlushed();
+    }
+  }
+
+  /**
+   * A ride waiting for its two counters to be flushed.
+   */
+  private static final class CountedRide {
+    private final Runnable onCounted;
+    private final AtomicInteger counters = new AtomicInteger(2);
+
+    CountedRide(Runnable onCounted) {
+      this.onCounted = onCounted;
+    }
+
+    void counterFlushed() {
+      if (counters.decrementAndGet() == 0) {
+        onCounted.run();
+      }
+    }
+  }
+
+  private static final class CounterKey {
+    final int skierID;
+    final String totalKey;
+
+    CounterKey(int skierID, String totalKey) {
+      this.skierID = skierID;
+      this.totalKey = totalKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CounterKey)) {
+        return false;
+      }
+      CounterKey other = (CounterKey) o;
+      return skierID == other.skierID && totalKey.equals(other.totalKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * skierID + totalKey.hashCode();
+    }
+  }
+
+  /**
+   * What to add to one counter. Changed only inside pending.compute(), or by the flush that
+   * removed it.
+   */
+  private static final class Delta {
+    long vertical;
+    long rides;
+    final List<CountedRide> waiting = new ArrayList<>();
+
+    Delta add(int vertical, CountedRide ride) {
+      this.vertical += vertical;
+      rides++;
+      waiting.add(ride);
+      return this;
+    }
+
+    Delta absorb(Delta other) {
+      vertical += other.vertical;
+      rides += other.rides;
+      waiting.addAll(other.waiting);
+      return this;
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.upic.db;
+
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One-off backfill of the SkierVerticals totals with the rides written before
+ * {@link VerticalAggregator} existed.
+ *
+ * Rides written by a consumer that maintains totals carry a {@code writtenAt} attribute; older
+ * rides do not, and are the ones missing from the totals. The backfill runs in two steps:
+ * <ol>
+ *   <li>scan LiftRides for rides without {@code writtenAt}, sum them per counter and add the sums
+ *       with {@code SET backfilled}; the condition {@code attribute_not_exists(backfilled)} makes
+ *       a rerun skip counters that are already done</li>
+ *   <li>mark every other totals item as backfilled: it has no older rides, so it is complete</li>
+ * </ol>
+ * The server trusts a totals item once it is marked, and sums the rides otherwise. Once the
+ * backfill has finished, set dynamodb.vertical.backfillComplete on the server so that items
+ * created later are trusted too.
+ *
+ * Run it only after every consumer writes {@code writtenAt}, otherwise rides written by an older
+ * consumer after the scan are missed. Usage:
+ * {@code java -cp consumerService.jar com.upic.db.VerticalBackfill [scanSegments]}
+ */
+public class VerticalBackfill {
+  private static final String RIDES_TABLE = "LiftRides";
+
+  private final DynamoDbClient dynamoDbClient;
+  private final int segments;
+  private final ConcurrentHashMap<String, long[]> sums = new ConcurrentHashMap<>();
+  private final AtomicLong ridesScanned = new AtomicLong();
+
+  VerticalBackfill(DynamoDbClient dynamoDbClient, int segments) {
+    this.dynamoDbClient = dynamoDbClient;
+    this.segments = Math.max(1, segments);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int segments = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    DynamoDbClient client = DynamoDbClient.builder()
+        .region(Region.US_WEST_2)
+        .credentialsProvider(DefaultCredentialsProvider.create())
+        .build();
+    new VerticalBackfill(client, segments).run();
+    client.close();
+  }
+
+  void run() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(segments);
+    try {
+      List<Future<?>> scans = new ArrayList<>();
+      for (int segment = 0; segment < segments; segment++) {
+        int s = segment;
+        scans.add(pool.submit(() -> scanRides(s)));
+      }
+      for (Future<?> scan : scans) {
+        scan.get();
+      }
+      System.out.println("[*] Scanned " + ridesScanned.get() + " rides without writtenAt, "
+          + sums.size() + " counters to backfill");
+
+      int added = 0;
+      for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+        if (addOlderRides(entry.getKey(), entry.getValue())) {
+          added++;
+        }
+      }
+      System.out.println("[✔] Added older rides to " + added + " counters (" + (sums.size() - added)
+          + " were already backfilled)");
+
+      System.out.println("[✔] Marked " + markRemaining() + " counters without older rides as backfilled");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void scanRides(int segment) {
+    Map<String, AttributeValue> startKey = null;
+    do {
+      ScanResponse page = dynamoDbClient.scan(ScanRequest.builder()
+          .tableName(RIDES_TABLE)
+          .segment(segment)
+          .totalSegments(segments)
+          .filterExpression("attribute_not_exists(writtenAt)")
+          .projectionExpression("skierID, seasonID, resortID, #v")
+          .expressionAttributeNames(Map.of("#v", "vertical"))
+          .exclusiveStartKey(startKey)
+          .build());
+      for (Map<String, AttributeValue> item : page.items()) {
+        String skierID = item.get("skierID").n();
+        String seasonID = item.get("seasonID").s();
+        long vertical = Long.parseLong(item.get("vertical").n());
+        // the same two counters VerticalAggregator keeps
+        add(skierID + "|" + seasonID, vertical);
+        add(skierID + "|" + seasonID + "#r" + item.get("resortID").n(), vertical);
+        ridesScanned.incrementAndGet();
+      }
+      startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+    } while (startKey != null);
+  }
+
+  private void add(String counter, long vertical) {
+    sums.merge(counter, new long[] {vertical, 1}, (a, b) -> new long[] {a[0] + b[0], a[1] + b[1]});
+  }
+
+  /**
+   * @return false if the counter had already been backfilled
+   */
+  private boolean addOlderRides(String counter, long[] sum) {
+    int separator = counter.indexOf('|');
+    try {
+      dynamoDbClient.updateItem(UpdateItemRequest.builder()
+          .tableName(VerticalAggregator.TABLE_NAME)
+          .key(Map.of(
+              "skierID", AttributeValue.builder().n(counter.substring(0, separator)).build(),
+              "totalKey", AttributeValue.builder().s(counter.substring(separator + 1)).build()))
+          .updateExpression("ADD totalVertical :v, rides :n SET backfilled = :true")
+          .conditionExpression("attribute_not_exists(backfilled)")
+          .expressionAttributeValues(Map.of(
+              ":v", AttributeValue.builder().n(String.valueOf(sum[0])).build(),
+              ":n", AttributeValue.builder().n(String.valueOf(sum[1])).build(),
+              ":true", AttributeValue.builder().bool(true).build()))
+          .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Mark every totals item that is not marked yet. Step 1 has marked all counters with older
+   * rides, so the rest are complete.
+   */
+  private int markRemaining() {
+    int marked = 0;
+    Map<String, AttributeValue> startKey = null;
+    do {
+      ScanResponse page = dynamoDbClient.scan(ScanRequest.builder()
+          .tableName(VerticalAggregator.TABLE_NAME)
+          .filterExpression("attribute_not_exists(backfilled)")
+          .projectionExpression("skierID, totalKey")
+          .exclusiveStartKey(startKey)
+          .build());
+      for (Map<String, AttributeValue> item : page.items()) {
+        try {
+          dynamoDbClient.updateItem(UpdateItemRequest.builder()
+              .tableName(VerticalAggregator.TABLE_NAME)
+              .key(new HashMap<>(item))
+              .updateExpression("SET backfilled = :true")
+              .conditionExpression("attribute_not_exists(backfilled)")
+              .expressionAttributeValues(Map.of(":true", AttributeValue.builder().bool(true).build()))
+              .build());
+          marked++;
+        } catch (ConditionalCheckFailedException e) {
+          // marked meanwhile
+        }
+      }
+      startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+    } while (startKey != null);
+    return marked;
+  }
+}
@@ -0,0 +1,226 @@
+package com.upic.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * AIMD limit on the rate {@link DynamoDBWriter} sends items at.
+ *
+ * Batches that DynamoDB takes in full raise the limit by a fixed step every 100 ms (additive
+ * increase). A throttling error, or a batch that comes back with more than 10% of its items
+ * unprocessed, halves it (multiplicative decrease), at most once per 500 ms so that the batches
+ * already in flight do not all cut it again for the same overload. Writers pace themselves with
+ * {@link #reserve}.
+ *
+ * A decrease also puts the controller in the throttled state, and {@link Listener}s are told to
+ * stop taking new work until no decrease has happened for the cooldown. They then resume at a
+ * share of their normal intake matching the current limit, and are told again as the limit
+ * climbs back. The consumer pauses its RabbitMQ subscriptions, so a burst waits in the queue
+ * instead of in the writer's buffers.
+ */
+public class WriteRateController implements WriteRateControllerMXBean {
+  private static final double DECREASE_FACTOR = 0.5;
+  private static final long DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+  private static final long INCREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final double UNPROCESSED_THRESHOLD = 0.1;
+  // idle time a writer may bank and then spend as a burst
+  private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long CHECK_INTERVAL_MS = 250;
+  // listeners are told again once the limit has recovered by this share of the maximum
+  private static final double RESUME_STEP = 0.25;
+
+  /**
+   * Told when consumption should stop and when it may go on.
+   */
+  public interface Listener {
+    void pause();
+
+    /**
+     * @param rateFraction current limit as a fraction of the maximum, to scale intake by
+     */
+    void resume(double rateFraction);
+  }
+
+  private final double minRate;
+  private final double maxRate;
+  private final double increaseStep;
+  private final long cooldownNanos;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final LongAdder decreases = new LongAdder();
+  // runs the cooldown check and every listener call, so they happen in order and off the I/O threads
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "write-rate-controller");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // guarded by this
+  private double rate;
+  private long nextFreeNanos = System.nanoTime();
+  private long lastDecreaseNanos;
+  private long lastSignalNanos;
+  private long lastIncreaseNanos;
+  private boolean throttled;
+  private double resumedFraction = 1;
+
+  /**
+   * @param minRate          floor for the limit, items per second
+   * @param maxRate          starting limit and ceiling, items per second
+   * @param increasePerSecond how fast the limit climbs back, items per second per second
+   * @param cooldownMs       time without a decrease before listeners resume
+   */
+  public WriteRateController(double minRate, double maxRate, double increasePerSecond, long cooldownMs) {
+    this.minRate = Math.max(1, Math.min(minRate, maxRate));
+    this.maxRate = Math.max(this.minRate, maxRate);
+    this.increaseStep = increasePerSecond * INCREASE_INTERVAL_NANOS / TimeUnit.SECONDS.toNanos(1);
+    this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMs);
+    this.rate = this.maxRate;
+    this.lastDecreaseNanos = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+    this.lastIncreaseNanos = System.nanoTime();
+    timer.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Register under {@code com.upic:type=WriteRateController}; failure only costs the JMX view.
+   */
+  void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+          new ObjectName("com.upic:type=WriteRateController"));
+    } catch (Exception e) {
+      System.err.println("[!] Could not register write rate MBean: " + e.getMessage());
+    }
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Claim the rate for {@code items} writes.
+   *
+   * @return nanoseconds to wait before sending them
+   */
+  public synchronized long reserve(int items) {
+    long now = System.nanoTime();
+    nextFreeNanos = Math.max(nextFreeNanos, now - BURST_NANOS);
+    long wait = Math.max(0, nextFreeNanos - now);
+    nextFreeNanos += (long) (items * TimeUnit.SECONDS.toNanos(1) / rate);
+    return wait;
+  }
+
+  /**
+   * A BatchWriteItem of {@code sent} items came back with {@code unprocessed} of them left.
+   */
+  public void onBatch(int sent, int unprocessed) {
+    if (sent == 0) {
+      return;
+    }
+    if ((double) unprocessed / sent > UNPROCESSED_THRESHOLD) {
+      decrease("unprocessed " + unprocessed + "/" + sent);
+    } else if (unprocessed == 0) {
+      increase();
+    }
+  }
+
+  /**
+   * A request failed with a throttling error such as ProvisionedThroughputExceededException.
+   */
+  public void onThrottled() {
+    decrease("throttled");
+  }
+
+  private void decrease(String reason) {
+    boolean pause;
+    double newRate;
+    synchronized (this) {
+      long now = System.nanoTime();
+      // every signal restarts the cooldown, even one for an overload that was already answered
+      lastSignalNanos = now;
+      if (now - lastDecreaseNanos < DECREASE_INTERVAL_NANOS) {
+        return;
+      }
+      rate = Math.max(minRate, rate * DECREASE_FACTOR);
+      lastDecreaseNanos = now;
+      lastIncreaseNanos = now;
+      pause = !throttled;
+      throttled = true;
+      newRate = rate;
+    }
+    decreases.increment();
+    System.out.println("[!] Write rate cut to " + Math.round(newRate) + " items/s (" + reason + ")");
+    if (pause) {
+      timer.execute(() -> {
+        for (Listener listener : listeners) {
+          try {
+            listener.pause();
+          } catch (RuntimeException e) {
+            System.err.println("[!] Pause failed: " + e.getMessage());
+          }
+        }
+      });
+    }
+  }
+
+  private synchronized void increase() {
+    long now = System.nanoTime();
+    if (rate >= maxRate || now - lastIncreaseNanos < INCREASE_INTERVAL_NANOS) {
+      return;
+    }
+    rate = Math.min(maxRate, rate + increaseStep);
+    lastIncreaseNanos = now;
+  }
+
+  /**
+   * End the throttled state after the cooldown, and widen intake again as the limit recovers.
+   */
+  private void check() {
+    double fraction;
+    synchronized (this) {
+      fraction = rate / maxRate;
+      if (throttled) {
+        if (System.nanoTime() - lastSignalNanos < cooldownNanos) {
+          return;
+        }
+      } else if (fraction < 1 ? fraction - resumedFraction < RESUME_STEP : resumedFraction >= 1) {
+        return;
+      }
+      throttled = false;
+      resumedFraction = fraction;
+    }
+    System.out.println("[*] Resuming consumption at " + Math.round(fraction * 100) + "% of the maximum write rate");
+    for (Listener listener : listeners) {
+      try {
+        listener.resume(fraction);
+      } catch (RuntimeException e) {
+        System.err.println("[!] Resume failed: " + e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public synchronized double getRateLimit() {
+    return rate;
+  }
+
+  @Override
+  public double getMaxRate() {
+    return maxRate;
+  }
+
+  @Override
+  public long getDecreases() {
+    return decreases.sum();
+  }
+
+  @Override
+  public synchronized boolean isThrottled() {
+    return throttled;
+  }
+}
@@ -0,0 +1,23 @@
+package com.upic.db;
+
+/**
+ * JMX view of the write-rate controller, registered as {@code com.upic:type=WriteRateController}.
+ */
+public interface WriteRateControllerMXBean {
+  /**
+   * Current limit on items written per second.
+   */
+  double getRateLimit();
+
+  double getMaxRate();
+
+  /**
+   * Multiplicative decreases so far, one per throttling episode window.
+   */
+  long getDecreases();
+
+  /**
+   * Whether RabbitMQ consumption is paused because of throttling.
+   */
+  boolean isThrottled();
+}
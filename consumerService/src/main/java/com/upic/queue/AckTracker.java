@@ -0,0 +1,84 @@
+package com.upic.queue;
+
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Settles one channel's deliveries once their rides have been written to DynamoDB.
+ *
+ * Writes finish out of order (different writer shards, different batches), but an ack with
+ * {@code multiple=true} covers every earlier tag, so the tracker only acks up to the highest
+ * tag whose predecessors have all been written, in one frame. A failed write is nacked on its
+ * own and requeued, and no longer holds back the acks behind it.
+ *
+ * Called from the channel's delivery thread and from the writer threads; all channel calls
+ * are made under the tracker's lock, so acks on a channel never interleave.
+ */
+class AckTracker {
+  private final Channel channel;
+  // outstanding delivery tags in order; true once the ride has been written
+  private final TreeMap<Long, Boolean> outstanding = new TreeMap<>();
+
+  AckTracker(Channel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Start tracking a delivery. Must be called in delivery-tag order, before the ride is handed
+   * to the writer.
+   */
+  synchronized void track(long deliveryTag) {
+    outstanding.put(deliveryTag, Boolean.FALSE);
+  }
+
+  /**
+   * The delivery's ride has been written; ack everything that is now contiguous.
+   */
+  synchronized void written(long deliveryTag) {
+    if (outstanding.replace(deliveryTag, Boolean.TRUE) == null) {
+      return;
+    }
+    long ackUpTo = -1;
+    Iterator<Map.Entry<Long, Boolean>> it = outstanding.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Long, Boolean> entry = it.next();
+      if (!entry.getValue()) {
+        break;
+      }
+      ackUpTo = entry.getKey();
+      it.remove();
+    }
+    if (ackUpTo >= 0) {
+      try {
+        channel.basicAck(ackUpTo, true);
+      } catch (IOException | RuntimeException e) {
+        // the channel is gone; the broker redelivers everything it had not seen acked
+        System.err.println("[!] Ack failed: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * The delivery could not be processed; nack it alone.
+   *
+   * @param requeue false for messages that would fail again, e.g. undecodable bodies
+   */
+  synchronized void failed(long deliveryTag, boolean requeue) {
+    if (outstanding.remove(deliveryTag) == null) {
+      return;
+    }
+    try {
+      channel.basicNack(deliveryTag, false, requeue);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("[!] Nack failed: " + e.getMessage());
+    }
+    // the failed tag may have been the one holding back later acks
+    if (!outstanding.isEmpty() && outstanding.firstEntry().getValue()) {
+      written(outstanding.firstKey());
+    }
+  }
+}
@@ -1,7 +1,8 @@
 package com.upic.queue;
 
-import com.google.gson.Gson;
 import com.rabbitmq.client.*;
+import com.upic.codec.LiftRideCodec;
+import com.upic.codec.LiftRideMessage;
 import com.upic.model.LiftRide;
 
 import java.io.IOException;
@@ -20,8 +21,6 @@ public class MessageQueueConsumer {
   private static final String RABBITMQ_USER = "guest";
   private static final String RABBITMQ_PASS = "guest";
 
-  private static final Gson gson = new Gson();
-
   // Thread-safe HashMap to store skier lift ride records
   private static final Map<Integer, LiftRide> skierLiftRideMap = new ConcurrentHashMap<>();
 
@@ -40,11 +39,10 @@ public class MessageQueueConsumer {
 
       // Define message consumption logic
       DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-        String message = new String(delivery.getBody(), "UTF-8");
-        System.out.println(" [x] Received '" + message + "'");
-
-        // Parse JSON and store data
-        LiftRideMessage liftRideMessage = gson.fromJson(message, LiftRideMessage.class);
+        // Decode JSON or binary body and store data
+        LiftRideMessage liftRideMessage = LiftRideCodec.decode(
+            delivery.getBody(), delivery.getProperties().getContentType());
+        System.out.println(" [x] Received ride for skierID: " + liftRideMessage.getSkierID());
         processMessage(liftRideMessage);
       };
 
@@ -61,24 +59,12 @@ public class MessageQueueConsumer {
   private static void processMessage(LiftRideMessage message) {
     // Construct a LiftRide object
     LiftRide liftRide = new LiftRide();
-    liftRide.setTime(message.time);
-    liftRide.setLiftID(message.liftID);
+    liftRide.setTime(message.getTime());
+    liftRide.setLiftID(message.getLiftID());
 
     // Store in skierLiftRideMap using skierID as the key
-    skierLiftRideMap.put(message.skierID, liftRide);
-
-    System.out.println(" [✔] Stored LiftRide for skierID: " + message.skierID);
-  }
+    skierLiftRideMap.put(message.getSkierID(), liftRide);
 
-  /**
-   * Inner class: Used to parse RabbitMQ messages.
-   */
-  static class LiftRideMessage {
-    int resortID;
-    String seasonID;
-    String dayID;
-    int skierID;
-    int time;
-    int liftID;
+    System.out.println(" [✔] Stored LiftRide for skierID: " + message.getSkierID());
   }
 }
@@ -1,36 +1,71 @@
 package com.upic.queue;
 
-import com.google.gson.Gson;
 import com.rabbitmq.client.*;
+import com.upic.codec.LiftRideCodec;
+import com.upic.codec.LiftRideMessage;
 import com.upic.config.RabbitMQConfig;
 import com.upic.db.DynamoDBWriter;
+import com.upic.db.WriteRateController;
 import com.upic.model.LiftRide;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 
 /**
  * Multi-threaded RabbitMQ consumer with batched DynamoDB writes.
  * Thread count reduced to prevent memory overload on t2.micro.
+ *
+ * While DynamoDB is throttling the writer, every worker cancels its subscription so new
+ * messages stay in RabbitMQ. Deliveries already taken are still written and acked. When the
+ * writer recovers, the workers subscribe again with the prefetch scaled to the writer's current
+ * rate limit, widening it as the limit climbs back.
  */
 public class MultiThreadedMessageQueueConsumer {
   private static final String QUEUE_NAME = "lift_ride_queue";
   private static final int NUM_CONSUMER_THREADS = 8; // Reduced thread count for memory control
-  private static final Gson gson = new Gson();
+  // unacked deliveries per channel: several 25-item batches, since acks now wait for DynamoDB
+  private static final int PREFETCH = Integer.getInteger("consumer.prefetch", 200);
+  // prefetch never drops below one full DynamoDB batch
+  private static final int MIN_PREFETCH = 25;
 
   public static void main(String[] args) throws Exception {
     Connection connection = RabbitMQConfig.getConnection();
 
+    List<ConsumerWorker> workers = new ArrayList<>();
     ExecutorService executor = Executors.newFixedThreadPool(NUM_CONSUMER_THREADS);
     for (int i = 0; i < NUM_CONSUMER_THREADS; i++) {
-      executor.submit(new ConsumerWorker(connection));
+      ConsumerWorker worker = new ConsumerWorker(connection);
+      workers.add(worker);
+      executor.submit(worker);
     }
 
+    DynamoDBWriter.addThrottleListener(new WriteRateController.Listener() {
+      @Override
+      public void pause() {
+        System.out.println("[!] DynamoDB is throttling, pausing consumption");
+        workers.forEach(ConsumerWorker::pause);
+      }
+
+      @Override
+      public void resume(double rateFraction) {
+        int prefetch = Math.max(MIN_PREFETCH, (int) Math.round(PREFETCH * rateFraction));
+        workers.forEach(worker -> worker.resume(prefetch));
+      }
+    });
+
     System.out.println("[*] Multi-threaded Consumer started with " + NUM_CONSUMER_THREADS + " threads.");
   }
 
   static class ConsumerWorker implements Runnable {
     private final Connection connection;
+    // set once run() has subscribed; subscription changes are made under the AckTracker's lock
+    private volatile Channel channel;
+    private volatile AckTracker acks;
+    private volatile DeliverCallback deliverCallback;
+    private String consumerTag;
+    private int prefetch = PREFETCH;
 
     public ConsumerWorker(Connection connection) {
       this.connection = connection;
@@ -41,51 +76,115 @@ public class MultiThreadedMessageQueueConsumer {
       try {
         Channel channel = connection.createChannel();
         channel.queueDeclare(QUEUE_NAME, true, false, false, null);
-        channel.basicQos(10); // Control prefetch to avoid memory spikes
+        AckTracker acks = new AckTracker(channel);
 
         DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-          String message = new String(delivery.getBody(), "UTF-8");
-
+          long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+          acks.track(deliveryTag);
           try {
-            LiftRideMessage liftRideMessage = gson.fromJson(message, LiftRideMessage.class);
+            // JSON or binary, depending on the producer's content type
+            LiftRideMessage liftRideMessage;
+            try {
+              liftRideMessage = LiftRideCodec.decode(
+                  delivery.getBody(), delivery.getProperties().getContentType());
+            } catch (IOException e) {
+              // a malformed body fails the same way every time, so do not requeue it
+              System.err.println("[!] Dropping undecodable message: " + e.getMessage());
+              acks.failed(deliveryTag, false);
+              return;
+            }
 
             LiftRide liftRide = new LiftRide();
-            liftRide.setLiftID(liftRideMessage.liftID);
-            liftRide.setTime(liftRideMessage.time);
+            liftRide.setLiftID(liftRideMessage.getLiftID());
+            liftRide.setTime(liftRideMessage.getTime());
 
-            // Submit to batch queue
+            // Submit to batch queue; the message is acked once its batch is in DynamoDB
             DynamoDBWriter.writeLiftRide(
-                liftRideMessage.skierID,
-                liftRideMessage.resortID,
-                liftRideMessage.seasonID,
-                liftRideMessage.dayID,
-                liftRide
+                liftRideMessage.getSkierID(),
+                liftRideMessage.getResortID(),
+                liftRideMessage.getSeasonID(),
+                liftRideMessage.getDayID(),
+                liftRide,
+                outcome -> {
+                  if (outcome == DynamoDBWriter.Outcome.WRITTEN) {
+                    acks.written(deliveryTag);
+                  } else {
+                    // a ride DynamoDB refuses outright would fail again, so it is not requeued
+                    acks.failed(deliveryTag, outcome == DynamoDBWriter.Outcome.FAILED);
+                  }
+                }
             );
 
             // Minimal log to avoid slowing down threads
             // System.out.println("[✔] Queued skierID: " + liftRideMessage.skierID);
-
-            channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
           } catch (Exception e) {
             System.err.println("[!] Error processing message: " + e.getMessage());
-            channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
+            acks.failed(deliveryTag, true);
           }
         };
 
-        channel.basicConsume(QUEUE_NAME, false, deliverCallback, consumerTag -> {});
+        synchronized (acks) {
+          this.channel = channel;
+          this.acks = acks;
+          this.deliverCallback = deliverCallback;
+          subscribe();
+        }
 
       } catch (Exception e) {
         e.printStackTrace();
       }
     }
-  }
 
-  static class LiftRideMessage {
-    int resortID;
-    String seasonID;
-    String dayID;
-    int skierID;
-    int time;
-    int liftID;
+    /**
+     * Stop receiving new messages; unacked deliveries are still settled.
+     */
+    void pause() {
+      AckTracker acks = this.acks;
+      if (acks == null) {
+        return;
+      }
+      synchronized (acks) {
+        if (consumerTag == null) {
+          return;
+        }
+        try {
+          channel.basicCancel(consumerTag);
+          consumerTag = null;
+        } catch (IOException | RuntimeException e) {
+          System.err.println("[!] Pause failed: " + e.getMessage());
+        }
+      }
+    }
+
+    /**
+     * Receive messages again, at most {@code prefetch} unacked at a time.
+     */
+    void resume(int prefetch) {
+      AckTracker acks = this.acks;
+      if (acks == null) {
+        return;
+      }
+      synchronized (acks) {
+        try {
+          if (consumerTag != null) {
+            if (prefetch == this.prefetch) {
+              return;
+            }
+            // a consumer's prefetch is fixed when it subscribes
+            channel.basicCancel(consumerTag);
+            consumerTag = null;
+          }
+          this.prefetch = prefetch;
+          subscribe();
+        } catch (IOException | RuntimeException e) {
+          System.err.println("[!] Resume failed: " + e.getMessage());
+        }
+      }
+    }
+
+    private void subscribe() throws IOException {
+      channel.basicQos(prefetch); // Control prefetch to avoid memory spikes
+      consumerTag = channel.basicConsume(QUEUE_NAME, false, deliverCallback, tag -> {});
+    }
   }
-}
\ No newline at end of file
+}
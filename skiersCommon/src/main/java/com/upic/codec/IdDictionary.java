@@ -0,0 +1,46 @@
+package com.upic.codec;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dictionary coding for season and day IDs in the binary record.
+ *
+ * A canonical decimal ID ("2025", "1", no sign or leading zeros) between 0 and 65535 is coded
+ * as its numeric value. Decoding hands back a cached String per code, so consumers do not
+ * allocate a new String for every message. Version 1 of the record defines exactly this mapping.
+ */
+final class IdDictionary {
+  static final int MAX_CODE = 0xFFFF;
+
+  private static final AtomicReferenceArray<String> decoded = new AtomicReferenceArray<>(MAX_CODE + 1);
+
+  private IdDictionary() {
+  }
+
+  /**
+   * @return the code for {@code id}, or -1 if it has none
+   */
+  static int encode(String id) {
+    if (id == null || id.isEmpty() || id.length() > 5 || (id.length() > 1 && id.charAt(0) == '0')) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value <= MAX_CODE ? value : -1;
+  }
+
+  static String decode(int code) {
+    String id = decoded.get(code);
+    if (id == null) {
+      id = Integer.toString(code);
+      decoded.lazySet(code, id);
+    }
+    return id;
+  }
+}
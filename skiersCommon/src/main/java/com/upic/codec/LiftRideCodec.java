@@ -0,0 +1,123 @@
+package com.upic.codec;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes {@link LiftRideMessage} queue bodies in either JSON or the fixed-width
+ * binary format. The AMQP content-type tells the consumer which one it received.
+ *
+ * Binary record, version 1, big-endian, {@link #BINARY_RECORD_SIZE} bytes:
+ * version(1) resortID(4) skierID(4) time(4) liftID(4) seasonCode(2) dayCode(2).
+ */
+public final class LiftRideCodec {
+  public static final String CONTENT_TYPE_JSON = "application/json";
+  public static final String CONTENT_TYPE_BINARY = "application/x-liftride";
+
+  public static final byte BINARY_VERSION = 1;
+  public static final int BINARY_RECORD_SIZE = 21;
+
+  private static final Gson gson = new Gson();
+
+  private LiftRideCodec() {
+  }
+
+  /**
+   * Whether the message's season and day IDs fit the binary dictionary.
+   */
+  public static boolean canEncodeBinary(LiftRideMessage message) {
+    return IdDictionary.encode(message.getSeasonID()) >= 0 && IdDictionary.encode(message.getDayID()) >= 0;
+  }
+
+  /**
+   * Write the binary record into {@code dst} starting at {@code offset}.
+   *
+   * @return number of bytes written ({@link #BINARY_RECORD_SIZE})
+   * @throws IllegalArgumentException if the season/day IDs cannot be dictionary-coded
+   */
+  public static int encodeBinary(LiftRideMessage message, byte[] dst, int offset) {
+    int seasonCode = IdDictionary.encode(message.getSeasonID());
+    int dayCode = IdDictionary.encode(message.getDayID());
+    if (seasonCode < 0 || dayCode < 0) {
+      throw new IllegalArgumentException("seasonID/dayID cannot be binary encoded: "
+          + message.getSeasonID() + "/" + message.getDayID());
+    }
+
+    dst[offset] = BINARY_VERSION;
+    putInt(dst, offset + 1, message.getResortID());
+    putInt(dst, offset + 5, message.getSkierID());
+    putInt(dst, offset + 9, message.getTime());
+    putInt(dst, offset + 13, message.getLiftID());
+    putShort(dst, offset + 17, seasonCode);
+    putShort(dst, offset + 19, dayCode);
+    return BINARY_RECORD_SIZE;
+  }
+
+  public static byte[] encodeJson(LiftRideMessage message) {
+    return gson.toJson(message).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decode a message body according to its content type. A missing content type means JSON,
+   * which is what producers sent before the binary format existed.
+   *
+   * @throws IOException if the body is not a valid message in that format
+   */
+  public static LiftRideMessage decode(byte[] body, String contentType) throws IOException {
+    if (CONTENT_TYPE_BINARY.equals(contentType)) {
+      return decodeBinary(body, 0, body.length);
+    }
+    return decodeJson(body);
+  }
+
+  public static LiftRideMessage decodeBinary(byte[] src, int offset, int length) throws IOException {
+    if (length < BINARY_RECORD_SIZE) {
+      throw new IOException("Binary lift ride record too short: " + length + " bytes");
+    }
+    if (src[offset] != BINARY_VERSION) {
+      throw new IOException("Unsupported binary lift ride version: " + src[offset]);
+    }
+    return new LiftRideMessage(
+        getInt(src, offset + 1),
+        IdDictionary.decode(getShort(src, offset + 17)),
+        IdDictionary.decode(getShort(src, offset + 19)),
+        getInt(src, offset + 5),
+        getInt(src, offset + 9),
+        getInt(src, offset + 13));
+  }
+
+  public static LiftRideMessage decodeJson(byte[] body) throws IOException {
+    try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)) {
+      LiftRideMessage message = gson.fromJson(reader, LiftRideMessage.class);
+      if (message == null) {
+        throw new IOException("Empty lift ride message");
+      }
+      return message;
+    } catch (RuntimeException e) {
+      throw new IOException("Invalid JSON lift ride message", e);
+    }
+  }
+
+  private static void putInt(byte[] b, int pos, int value) {
+    b[pos] = (byte) (value >>> 24);
+    b[pos + 1] = (byte) (value >>> 16);
+    b[pos + 2] = (byte) (value >>> 8);
+    b[pos + 3] = (byte) value;
+  }
+
+  private static void putShort(byte[] b, int pos, int value) {
+    b[pos] = (byte) (value >>> 8);
+    b[pos + 1] = (byte) value;
+  }
+
+  private static int getInt(byte[] b, int pos) {
+    return (b[pos] & 0xFF) << 24 | (b[pos + 1] & 0xFF) << 16 | (b[pos + 2] & 0xFF) << 8 | (b[pos + 3] & 0xFF);
+  }
+
+  private static int getShort(byte[] b, int pos) {
+    return (b[pos] & 0xFF) << 8 | (b[pos + 1] & 0xFF);
+  }
+}
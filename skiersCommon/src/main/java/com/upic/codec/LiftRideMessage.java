@@ -0,0 +1,51 @@
+package com.upic.codec;
+
+/**
+ * Queue message body: one lift ride plus the path parameters it was posted under.
+ * Shared by the producer in skiersServer and the consumers in consumerService.
+ */
+public class LiftRideMessage {
+  private int resortID;
+  private String seasonID;
+  private String dayID;
+  private int skierID;
+  private int time;
+  private int liftID;
+
+  // Used by Gson
+  private LiftRideMessage() {
+  }
+
+  public LiftRideMessage(int resortID, String seasonID, String dayID, int skierID, int time, int liftID) {
+    this.resortID = resortID;
+    this.seasonID = seasonID;
+    this.dayID = dayID;
+    this.skierID = skierID;
+    this.time = time;
+    this.liftID = liftID;
+  }
+
+  public int getResortID() {
+    return resortID;
+  }
+
+  public String getSeasonID() {
+    return seasonID;
+  }
+
+  public String getDayID() {
+    return dayID;
+  }
+
+  public int getSkierID() {
+    return skierID;
+  }
+
+  public int getTime() {
+    return time;
+  }
+
+  public int getLiftID() {
+    return liftID;
+  }
+}
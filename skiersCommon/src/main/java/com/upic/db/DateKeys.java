@@ -0,0 +1,54 @@
+package com.upic.db;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Layout of the LiftRides {@code dateKey} attribute, shared by the writer and the readers.
+ *
+ * A resort day is spread over {@link #SHARD_COUNT} keys, {@code <season>_<day>_r0} to
+ * {@code _r9}, so one busy day does not land on a single GSI partition. The writer picks a
+ * shard at random; a reader that wants the whole day has to query every shard.
+ */
+public final class DateKeys {
+  public static final int SHARD_COUNT = 10;
+
+  private static final String SHARD_MARKER = "_r";
+
+  private DateKeys() {
+  }
+
+  /**
+   * The dateKey of one shard of a resort day.
+   */
+  public static String shardKey(String seasonID, String dayID, int shard) {
+    return seasonID + "_" + dayID + SHARD_MARKER + shard;
+  }
+
+  /**
+   * A dateKey on a random shard of the day, for a new item.
+   */
+  public static String randomShardKey(String seasonID, String dayID) {
+    return shardKey(seasonID, dayID, ThreadLocalRandom.current().nextInt(SHARD_COUNT));
+  }
+
+  /**
+   * The shard number of a dateKey.
+   *
+   * @throws IllegalArgumentException if the key was not made by {@link #shardKey}
+   */
+  public static int shardOf(String dateKey) {
+    int marker = dateKey == null ? -1 : dateKey.lastIndexOf(SHARD_MARKER);
+    if (marker < 0) {
+      throw new IllegalArgumentException("Not a sharded dateKey: " + dateKey);
+    }
+    try {
+      int shard = Integer.parseInt(dateKey.substring(marker + SHARD_MARKER.length()));
+      if (shard < 0 || shard >= SHARD_COUNT) {
+        throw new IllegalArgumentException("Shard out of range: " + dateKey);
+      }
+      return shard;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a sharded dateKey: " + dateKey, e);
+    }
+  }
+}
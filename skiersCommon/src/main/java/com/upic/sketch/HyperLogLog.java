@@ -0,0 +1,158 @@
+package com.upic.sketch;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog distinct-value sketch (Flajolet et al. 2007, with the linear-counting correction
+ * for small cardinalities).
+ *
+ * A sketch of precision p has 2^p one-byte registers and estimates the number of distinct
+ * values added with a relative standard error of about 1.04 / sqrt(2^p), no matter how many
+ * values went in: at the default p = 14 that is 16 KB and 0.81%. Sketches of equal precision
+ * merge by taking the register-wise maximum, so sketches built on different consumers can be
+ * combined on read.
+ *
+ * Not thread-safe; callers synchronize around {@link #add} and {@link #merge}.
+ */
+public final class HyperLogLog {
+  public static final int DEFAULT_PRECISION = 14;
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final int HEADER_BYTES = 2;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    if (precision < 4 || precision > 18) {
+      throw new IllegalArgumentException("precision must be between 4 and 18: " + precision);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  private HyperLogLog(int precision, byte[] registers) {
+    this.precision = precision;
+    this.registers = registers;
+  }
+
+  /**
+   * Add an int value, e.g. a skierID.
+   *
+   * @return true if a register changed
+   */
+  public boolean add(int value) {
+    return addHash(mix(value + 0x9E3779B97F4A7C15L));
+  }
+
+  /**
+   * Add a value by its 64-bit hash. The hash must be well mixed in every bit.
+   *
+   * @return true if a register changed, i.e. the sketch needs to be persisted again
+   */
+  public boolean addHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // rank of the first 1-bit in the remaining bits, capped when they are all zero
+    long rest = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Fold another sketch of the same precision into this one.
+   */
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  /**
+   * Estimated number of distinct values added.
+   */
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = alpha(m) * m * (double) m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // linear counting is far more accurate while many registers are still empty
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Relative standard error of {@link #estimate()}: about 68% of estimates fall within this
+   * fraction of the true count and 95% within twice it.
+   */
+  public double relativeStandardError() {
+    return 1.04 / Math.sqrt(registers.length);
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Compact binary form: version, precision, then one byte per register.
+   */
+  public byte[] toBytes() {
+    byte[] bytes = new byte[HEADER_BYTES + registers.length];
+    bytes[0] = FORMAT_VERSION;
+    bytes[1] = (byte) precision;
+    System.arraycopy(registers, 0, bytes, HEADER_BYTES, registers.length);
+    return bytes;
+  }
+
+  /**
+   * Reverse of {@link #toBytes()}.
+   *
+   * @throws IllegalArgumentException if the bytes are not a serialized sketch
+   */
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    if (bytes == null || bytes.length < HEADER_BYTES || bytes[0] != FORMAT_VERSION) {
+      throw new IllegalArgumentException("Not a serialized HyperLogLog");
+    }
+    int precision = bytes[1];
+    if (precision < 4 || precision > 18 || bytes.length != HEADER_BYTES + (1 << precision)) {
+      throw new IllegalArgumentException("Corrupt HyperLogLog of precision " + precision);
+    }
+    return new HyperLogLog(precision, Arrays.copyOfRange(bytes, HEADER_BYTES, bytes.length));
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16: return 0.673;
+      case 32: return 0.697;
+      case 64: return 0.709;
+      default: return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+
+  // SplitMix64 finalizer: sequential IDs must still spread over every register
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
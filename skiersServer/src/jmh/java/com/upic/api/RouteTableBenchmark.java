@@ -0,0 +1,107 @@
+package com.upic.api;
+
+import com.upic.api.RouteTable.Route;
+import com.upic.api.RouteTable.RouteMatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-request routing cost of SkierServlet: the old split/regex/parseInt chain vs {@link RouteTable}.
+ *
+ * Run with {@code mvn -Pjmh package exec:exec}; the gc profiler's {@code gc.alloc.rate.norm}
+ * column is the bytes allocated per routed request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteTableBenchmark {
+  private static final String SKIERS = "/skiers";
+  private static final String RESORTS = "/resorts";
+
+  private final String skierDayPath = "/7/seasons/2025/days/1/skiers/99052";
+  private final String verticalPath = "/99052/vertical";
+  private final String resortDayPath = "/7/seasons/2025/day/1/skiers";
+
+  private final RouteTable routes = new RouteTable()
+      .add(Route.BATCH, SKIERS, "/batch")
+      .add(Route.SKIER_VERTICAL, SKIERS, "/{skierID}/vertical")
+      .add(Route.SKIER_DAY, SKIERS, "/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}")
+      .add(Route.RESORT_DAY_SKIERS, RESORTS, "/{resortID}/seasons/{seasonID}/day/{dayID}/skiers");
+  private final RouteMatch match = new RouteMatch();
+
+  @Benchmark
+  public void legacySkierDayPost(Blackhole bh) {
+    // doPost before the route table: split twice, then parseInt on the parts
+    if (skierDayPath.split("/").length != 8) {
+      return;
+    }
+    String[] parts = skierDayPath.split("/");
+    bh.consume(Integer.parseInt(parts[1]));
+    bh.consume(parts[3]);
+    bh.consume(parts[5]);
+    bh.consume(Integer.parseInt(parts[7]));
+  }
+
+  @Benchmark
+  public void routeTableSkierDayPost(Blackhole bh) {
+    bh.consume(routes.match(SKIERS, skierDayPath, match));
+    bh.consume(match.param(0));
+    bh.consume(match.param(1));
+    bh.consume(match.param(2));
+    bh.consume(match.param(3));
+  }
+
+  @Benchmark
+  public void legacyResortDayGet(Blackhole bh) {
+    // doGet before the route table: falls through the vertical and skier-day checks first
+    String[] parts = resortDayPath.split("/");
+    if (parts.length == 3 && parts[1].matches("\\d+") && parts[2].equals("vertical")) {
+      bh.consume(Integer.parseInt(parts[1]));
+      return;
+    }
+    if (parts.length == 8 && parts[2].equals("seasons") && parts[4].equals("days") && parts[6].equals("skiers")) {
+      bh.consume(Integer.parseInt(parts[1]));
+      return;
+    }
+    if (RESORTS.equals("/resorts") && parts.length >= 7 && "seasons".equals(parts[2])
+        && "day".equals(parts[4]) && "skiers".equals(parts[6])) {
+      bh.consume(Integer.parseInt(parts[1]));
+      bh.consume(parts[3]);
+      bh.consume(parts[5]);
+    }
+  }
+
+  @Benchmark
+  public void routeTableResortDayGet(Blackhole bh) {
+    bh.consume(routes.match(RESORTS, resortDayPath, match));
+    bh.consume(match.param(0));
+    bh.consume(match.param(1));
+    bh.consume(match.param(2));
+  }
+
+  @Benchmark
+  public void legacyVerticalGet(Blackhole bh) {
+    String[] parts = verticalPath.split("/");
+    if (parts.length == 3 && parts[1].matches("\\d+") && parts[2].equals("vertical")) {
+      bh.consume(Integer.parseInt(parts[1]));
+    }
+  }
+
+  @Benchmark
+  public void routeTableVerticalGet(Blackhole bh) {
+    bh.consume(routes.match(SKIERS, verticalPath, match));
+    bh.consume(match.param(0));
+  }
+}
@@ -0,0 +1,201 @@
+package com.upic.api;
+
+import com.upic.limit.AdaptiveLimiter;
+import com.upic.metrics.Endpoint;
+import com.upic.metrics.ServerMetrics;
+import com.upic.metrics.Stage;
+import com.upic.queue.PublishStage;
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Non-blocking handling of one POST /skiers/... request.
+ *
+ * The body is collected through a {@link ReadListener} as the container reports data available,
+ * the parsed ride is handed to the {@link PublishStage}, and the {@link AsyncContext} is completed
+ * when the broker confirms the publish. No container thread waits on the socket or on RabbitMQ.
+ */
+class AsyncIngestHandler implements ReadListener, AsyncListener {
+  private final AsyncContext asyncContext;
+  private final ServletInputStream input;
+  private final PublishStage publishStage;
+  private final LiftRideDecoder decoder;
+  private final int resortID;
+  private final String seasonID;
+  private final String dayID;
+  private final int skierID;
+  private final long startNanos; // request arrival, for the endpoint latency histogram
+  private final AdaptiveLimiter limiter; // write permit held until the request completes, may be null
+  private final long permitStart;
+  private final ServerMetrics metrics = ServerMetrics.get();
+
+  private final byte[] body = new byte[LiftRideDecoder.MAX_BODY_BYTES];
+  private int bodyLength;
+  private final AtomicBoolean completed = new AtomicBoolean();
+
+  private AsyncIngestHandler(AsyncContext asyncContext, ServletInputStream input, PublishStage publishStage,
+                             LiftRideDecoder decoder, int resortID, String seasonID, String dayID, int skierID,
+                             long startNanos, AdaptiveLimiter limiter, long permitStart) {
+    this.asyncContext = asyncContext;
+    this.input = input;
+    this.publishStage = publishStage;
+    this.decoder = decoder;
+    this.resortID = resortID;
+    this.seasonID = seasonID;
+    this.dayID = dayID;
+    this.skierID = skierID;
+    this.startNanos = startNanos;
+    this.limiter = limiter;
+    this.permitStart = permitStart;
+  }
+
+  /**
+   * Put the request into async mode and start reading its body.
+   */
+  static void start(AsyncContext asyncContext, long timeoutMs, PublishStage publishStage,
+                    LiftRideDecoder decoder, int resortID, String seasonID, String dayID, int skierID,
+                    long startNanos, AdaptiveLimiter limiter, long permitStart) throws IOException {
+    asyncContext.setTimeout(timeoutMs);
+    ServletInputStream input = asyncContext.getRequest().getInputStream();
+    AsyncIngestHandler handler = new AsyncIngestHandler(asyncContext, input, publishStage, decoder,
+        resortID, seasonID, dayID, skierID, startNanos, limiter, permitStart);
+    asyncContext.addListener(handler);
+    input.setReadListener(handler);
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+    while (input.isReady() && !completed.get()) {
+      if (bodyLength == body.length) {
+        // buffer full but the body keeps going
+        if (input.read() != -1) {
+          finish(LiftRideDecoder.Status.TOO_LARGE);
+        }
+        return;
+      }
+      int n = input.read(body, bodyLength, body.length - bodyLength);
+      if (n == -1) {
+        return;
+      }
+      bodyLength += n;
+    }
+  }
+
+  @Override
+  public void onAllDataRead() throws IOException {
+    if (completed.get()) {
+      return;
+    }
+
+    long stageStart = System.nanoTime();
+    LiftRideDecoder.Status status = decoder.decode(body, bodyLength);
+    metrics.recordStage(Endpoint.POST_LIFT_RIDE, Stage.PARSE, stageStart);
+    if (status != LiftRideDecoder.Status.OK) {
+      finish(status);
+      return;
+    }
+
+    long publishStart = System.nanoTime();
+    publishStage.submit(decoder.toLiftRide(), resortID, seasonID, dayID, skierID).whenComplete((ignored, error) -> {
+      metrics.recordStage(Endpoint.POST_LIFT_RIDE, Stage.PUBLISH, publishStart);
+      if (error == null) {
+        finish(HttpServletResponse.SC_CREATED, "Lift ride added to queue", true);
+      } else if (unwrap(error) instanceof RejectedExecutionException) {
+        metrics.publishRejected();
+        finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy, retry later", false);
+      } else {
+        metrics.publishFailed();
+        finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to enqueue message", false);
+      }
+    });
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error", false);
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Timed out waiting for queue", false);
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error", false);
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    completed.set(true);
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {
+  }
+
+  /**
+   * Write the response and complete the request exactly once, whichever of
+   * publish confirm, read error or timeout gets here first.
+   */
+  private void finish(int statusCode, String message, boolean success) {
+    if (!completed.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+      if (success) {
+        SkierServlet.sendSuccessResponse(response, statusCode, message);
+      } else {
+        SkierServlet.sendErrorResponse(response, statusCode, message);
+      }
+    } catch (IOException | IllegalStateException e) {
+      System.err.println("[!] Failed to write async response: " + e.getMessage());
+    } finally {
+      releasePermit(statusCode);
+      metrics.requestFinished(Endpoint.POST_LIFT_RIDE, startNanos, statusCode);
+      asyncContext.complete();
+    }
+  }
+
+  /**
+   * Complete the request with the 4xx response for a body that failed to decode.
+   */
+  private void finish(LiftRideDecoder.Status status) {
+    if (!completed.compareAndSet(false, true)) {
+      return;
+    }
+    HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+    try {
+      SkierServlet.sendBodyError(response, status);
+    } catch (IOException | IllegalStateException e) {
+      System.err.println("[!] Failed to write async response: " + e.getMessage());
+    } finally {
+      // nothing was published, so the request says nothing about RabbitMQ's latency
+      if (limiter != null) {
+        limiter.releaseUnsampled();
+      }
+      metrics.requestFinished(Endpoint.POST_LIFT_RIDE, startNanos, response.getStatus());
+      asyncContext.complete();
+    }
+  }
+
+  private void releasePermit(int statusCode) {
+    if (limiter != null) {
+      // a full publish queue or a timeout is exactly the overload the limiter reacts to
+      limiter.release(permitStart, statusCode >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+  }
+}
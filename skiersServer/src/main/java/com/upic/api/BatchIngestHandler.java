@@ -0,0 +1,239 @@
+package com.upic.api;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.upic.codec.LiftRideMessage;
+import com.upic.limit.ResortQuotas;
+import com.upic.metrics.Endpoint;
+import com.upic.metrics.ServerMetrics;
+import com.upic.metrics.Stage;
+import com.upic.queue.MessageQueueProducer;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Handles POST /skiers/batch: many lift rides in one request.
+ *
+ * The body is either a JSON array or newline-delimited JSON objects of the form
+ * {"resortID":1,"seasonID":"2025","dayID":"1","skierID":42,"time":120,"liftID":7}.
+ * Records are parsed and validated one at a time straight off the request reader, valid ones
+ * are published in chunks on a single channel, and the response lists every rejected record
+ * by its zero-based index.
+ */
+class BatchIngestHandler {
+  private static final int PUBLISH_CHUNK_SIZE = 100;
+  private static final String QUOTA_EXCEEDED = "Resort quota exceeded";
+
+  private final MessageQueueProducer producer;
+  private final Gson gson;
+  private final ValidationRules rules;
+  private final ResortQuotas quotas; // may be null
+  private final int maxRecords;
+  private final long confirmTimeoutMs;
+  private final ServerMetrics metrics = ServerMetrics.get();
+
+  BatchIngestHandler(MessageQueueProducer producer, Gson gson, ValidationRules rules, ResortQuotas quotas,
+                     int maxRecords, long confirmTimeoutMs) {
+    this.producer = producer;
+    this.gson = gson;
+    this.rules = rules;
+    this.quotas = quotas;
+    this.maxRecords = maxRecords;
+    this.confirmTimeoutMs = confirmTimeoutMs;
+  }
+
+  /**
+   * @return true if any record was handed to RabbitMQ
+   */
+  boolean handle(Reader body, HttpServletResponse response) throws IOException {
+    List<RecordError> errors = new ArrayList<>();
+    List<LiftRideMessage> chunk = new ArrayList<>(PUBLISH_CHUNK_SIZE);
+    List<Integer> chunkIndexes = new ArrayList<>(PUBLISH_CHUNK_SIZE);
+    List<CompletableFuture<Void>> confirms = new ArrayList<>();
+    List<Integer> confirmIndexes = new ArrayList<>();
+    int total = 0;
+    // from the first publish, which happens while the body is still being read, to the last confirm
+    long publishStart = 0;
+
+    JsonReader reader = new JsonReader(body);
+    reader.setLenient(true); // allows several top-level objects (NDJSON)
+    try {
+      boolean array = reader.peek() == JsonToken.BEGIN_ARRAY;
+      if (array) {
+        reader.beginArray();
+      }
+
+      while (array ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT) {
+        if (total >= maxRecords) {
+          errors.add(new RecordError(total, "Batch exceeds " + maxRecords + " records"));
+          break;
+        }
+
+        LiftRideMessage message = readRecord(reader, total, errors);
+        int index = total++;
+        if (message == null) {
+          continue;
+        }
+        chunk.add(message);
+        chunkIndexes.add(index);
+        if (chunk.size() == PUBLISH_CHUNK_SIZE) {
+          if (confirms.isEmpty()) {
+            publishStart = System.nanoTime();
+          }
+          confirms.addAll(producer.publishBatch(chunk));
+          confirmIndexes.addAll(chunkIndexes);
+          chunk.clear();
+          chunkIndexes.clear();
+        }
+      }
+    } catch (MalformedJsonException | EOFException | IllegalStateException e) {
+      // The stream cannot be resynchronised after a syntax error; keep what was read so far
+      errors.add(new RecordError(total, "Invalid JSON format"));
+    }
+
+    if (confirms.isEmpty()) {
+      publishStart = System.nanoTime();
+    }
+    if (!chunk.isEmpty()) {
+      confirms.addAll(producer.publishBatch(chunk));
+      confirmIndexes.addAll(chunkIndexes);
+    }
+
+    int publishFailures = awaitConfirms(confirms, confirmIndexes, errors);
+    metrics.recordStage(Endpoint.POST_BATCH, Stage.PUBLISH, publishStart);
+    if (publishFailures > 0) {
+      metrics.publishFailed(publishFailures);
+    }
+    int accepted = confirms.size() - publishFailures;
+    errors.sort(Comparator.comparingInt(error -> error.index));
+
+    int status;
+    if (errors.isEmpty()) {
+      status = HttpServletResponse.SC_CREATED;
+    } else if (accepted > 0) {
+      status = HttpServletResponse.SC_OK; // partial success, see errors
+    } else if (publishFailures > 0) {
+      status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    } else if (errors.stream().allMatch(error -> QUOTA_EXCEEDED.equals(error.message))) {
+      status = SkierServlet.SC_TOO_MANY_REQUESTS;
+    } else {
+      status = HttpServletResponse.SC_BAD_REQUEST;
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("accepted", accepted);
+    result.put("rejected", errors.size());
+    result.put("errors", errors);
+
+    response.setStatus(status);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    try (PrintWriter out = response.getWriter()) {
+      out.write(gson.toJson(result));
+    }
+    return !confirms.isEmpty();
+  }
+
+  /**
+   * Read one record object; on a validation problem the error is recorded and null returned.
+   */
+  private LiftRideMessage readRecord(JsonReader reader, int index, List<RecordError> errors) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      errors.add(new RecordError(index, "Record is not a JSON object"));
+      return null;
+    }
+
+    int resortID = 0, skierID = 0, time = 0, liftID = 0;
+    String seasonID = null, dayID = null;
+    String badField = null;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      try {
+        switch (name) {
+          case "resortID": resortID = reader.nextInt(); break;
+          case "seasonID": seasonID = reader.nextString(); break;
+          case "dayID": dayID = reader.nextString(); break;
+          case "skierID": skierID = reader.nextInt(); break;
+          case "time": time = reader.nextInt(); break;
+          case "liftID": liftID = reader.nextInt(); break;
+          default: reader.skipValue();
+        }
+      } catch (NumberFormatException | IllegalStateException e) {
+        // Wrong value type: the token was not consumed, so skip it and keep going
+        reader.skipValue();
+        if (badField == null) {
+          badField = name;
+        }
+      }
+    }
+    reader.endObject();
+
+    if (badField != null) {
+      errors.add(new RecordError(index, "Invalid value for " + badField));
+      return null;
+    }
+    if (!rules.isValidPath(resortID, seasonID, dayID, skierID)) {
+      errors.add(new RecordError(index, "Invalid resortID, seasonID, dayID or skierID"));
+      return null;
+    }
+    if (!rules.isValidRide(time, liftID)) {
+      errors.add(new RecordError(index, "Invalid time or liftID"));
+      return null;
+    }
+    if (quotas != null && !quotas.tryAcquire(resortID)) {
+      errors.add(new RecordError(index, QUOTA_EXCEEDED));
+      return null;
+    }
+    return new LiftRideMessage(resortID, seasonID, dayID, skierID, time, liftID);
+  }
+
+  /**
+   * Wait (within one shared deadline) for every confirm and record the ones that failed.
+   *
+   * @return number of failed publishes
+   */
+  private int awaitConfirms(List<CompletableFuture<Void>> confirms, List<Integer> indexes, List<RecordError> errors) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+    int failures = 0;
+    for (int i = 0; i < confirms.size(); i++) {
+      try {
+        confirms.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        errors.add(new RecordError(indexes.get(i), "Failed to enqueue message"));
+        failures++;
+      } catch (ExecutionException | TimeoutException e) {
+        errors.add(new RecordError(indexes.get(i), "Failed to enqueue message"));
+        failures++;
+      }
+    }
+    return failures;
+  }
+
+  private static class RecordError {
+    final int index;
+    final String message;
+
+    RecordError(int index, String message) {
+      this.index = index;
+      this.message = message;
+    }
+  }
+}
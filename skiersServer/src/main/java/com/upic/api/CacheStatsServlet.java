@@ -0,0 +1,58 @@
+package com.upic.api;
+
+import com.google.gson.Gson;
+import com.upic.cache.ReadCache;
+import com.upic.cache.SingleFlight;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reports hit/miss/eviction counters of the SkierServlet read cache as JSON.
+ */
+public class CacheStatsServlet extends HttpServlet {
+  static final String CACHE_ATTRIBUTE = "com.upic.readCache";
+  static final String SINGLE_FLIGHT_ATTRIBUTE = "com.upic.resortDayQueries";
+
+  private final Gson gson = new Gson();
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    ReadCache<?, ?> cache = (ReadCache<?, ?>) getServletContext().getAttribute(CACHE_ATTRIBUTE);
+    if (cache == null) {
+      SkierServlet.sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Read cache is disabled or not initialized");
+      return;
+    }
+
+    ReadCache.Stats stats = cache.stats();
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("size", stats.getSize());
+    body.put("hits", stats.getHits());
+    body.put("negativeHits", stats.getNegativeHits());
+    body.put("misses", stats.getMisses());
+    body.put("hitRatio", stats.getHitRatio());
+    body.put("evictions", stats.getEvictions());
+    body.put("expirations", stats.getExpirations());
+    body.put("rejections", stats.getRejections());
+
+    SingleFlight<?, ?> resortDayQueries =
+        (SingleFlight<?, ?>) getServletContext().getAttribute(SINGLE_FLIGHT_ATTRIBUTE);
+    if (resortDayQueries != null) {
+      Map<String, Object> coalescing = new LinkedHashMap<>();
+      coalescing.put("queries", resortDayQueries.getCallCount());
+      coalescing.put("coalesced", resortDayQueries.getCoalescedCount());
+      coalescing.put("timeouts", resortDayQueries.getTimeoutCount());
+      body.put("resortDay", coalescing);
+    }
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.getWriter().write(gson.toJson(body));
+  }
+}
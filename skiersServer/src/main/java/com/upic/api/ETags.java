@@ -0,0 +1,74 @@
+package com.upic.api;
+
+/**
+ * Strong entity tags for the GET endpoints, built from a fingerprint of the data rather than
+ * the serialized body, so a poll that matches {@code If-None-Match} can be answered with 304
+ * before any JSON is written.
+ *
+ * A fingerprint is the item count plus an order-independent 64-bit hash of the items; the
+ * gzip representation of a body gets its own tag, as strong tags require.
+ */
+final class ETags {
+  private static final String GZIP_SUFFIX = "-gz";
+
+  private ETags() {
+  }
+
+  /**
+   * Fold one value into an order-independent content hash: {@code hash + mix(value)}.
+   */
+  static long add(long hash, long value) {
+    return hash + mix(value);
+  }
+
+  static long pack(int high, int low) {
+    return ((long) high << 32) | (low & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @return a quoted strong entity tag for {@code count} items with the given content hash
+   */
+  static String of(long count, long hash) {
+    return "\"" + Long.toHexString(count) + '-' + Long.toHexString(mix(hash)) + "\"";
+  }
+
+  /**
+   * The tag of the gzip-encoded representation of a body tagged {@code etag}.
+   */
+  static String gzip(String etag) {
+    return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + "\"";
+  }
+
+  /**
+   * Weak comparison of an If-None-Match header (a list of tags or "*") against a body tagged
+   * {@code etag}. The gzip representation compares equal to the identity one.
+   *
+   * @return the tag from the header that matched, to send back with the 304, or null
+   */
+  static String match(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null || etag == null) {
+      return null;
+    }
+    String gzipEtag = gzip(etag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*")) {
+        return etag;
+      }
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals(etag) || tag.equals(gzipEtag)) {
+        return tag;
+      }
+    }
+    return null;
+  }
+
+  // SplitMix64 finalizer: spreads small, similar IDs over the whole 64 bits
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,127 @@
+package com.upic.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * gzip response encoding with reusable {@link Deflater}s.
+ *
+ * A Deflater holds a few hundred KB of native memory and is costly to create, so instead of a
+ * new {@code GZIPOutputStream} per response the deflaters are kept in a bounded pool and reset
+ * between uses. When the pool is empty a new one is made; when it is full a returned one is
+ * released.
+ */
+final class GzipPool {
+  // fixed header: magic, CM=deflate, no flags, no mtime, no extra flags, OS unknown
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  private final ArrayBlockingQueue<Deflater> idle;
+  private final int level;
+
+  GzipPool(int capacity, int level) {
+    this.idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    this.level = level;
+  }
+
+  /**
+   * @return true if an Accept-Encoding header allows gzip
+   */
+  static boolean accepts(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+        continue;
+      }
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            return Double.parseDouble(param.substring(2)) > 0;
+          } catch (NumberFormatException e) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * gzip a complete body.
+   */
+  byte[] compress(byte[] body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+    try (OutputStream gzip = wrap(out)) {
+      gzip.write(body);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * A gzip stream over {@code out}. Closing it writes the trailer, closes {@code out} and
+   * returns the deflater to the pool.
+   */
+  OutputStream wrap(OutputStream out) throws IOException {
+    Deflater deflater = idle.poll();
+    if (deflater == null) {
+      deflater = new Deflater(level, true);
+    }
+    return new PooledGzipStream(out, deflater);
+  }
+
+  private void release(Deflater deflater) {
+    deflater.reset();
+    if (!idle.offer(deflater)) {
+      deflater.end();
+    }
+  }
+
+  private final class PooledGzipStream extends DeflaterOutputStream {
+    private final CRC32 crc = new CRC32();
+    private boolean closed;
+
+    PooledGzipStream(OutputStream out, Deflater deflater) throws IOException {
+      super(out, deflater, 8192);
+      out.write(HEADER);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      super.write(b, off, len);
+      crc.update(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        finish();
+        writeIntLE((int) crc.getValue());
+        writeIntLE((int) def.getBytesRead());
+        out.close();
+      } finally {
+        release(def);
+      }
+    }
+
+    private void writeIntLE(int value) throws IOException {
+      out.write(value);
+      out.write(value >>> 8);
+      out.write(value >>> 16);
+      out.write(value >>> 24);
+    }
+  }
+}
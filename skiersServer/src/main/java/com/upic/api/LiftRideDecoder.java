@@ -0,0 +1,232 @@
+package com.upic.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.upic.model.LiftRide;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the POST lift ride body ({"time": 217, "liftID": 21}) straight from request bytes.
+ *
+ * The common case, an object with just {@code time} and {@code liftID} as plain integers, is
+ * parsed byte by byte into primitives with no intermediate String or reflection. Anything else
+ * that is still well-formed JSON (unknown fields, escaped keys, numbers like 2.0) falls back to
+ * Gson. Bodies larger than {@link #MAX_BODY_BYTES} are rejected before they are fully read.
+ */
+class LiftRideDecoder {
+  static final int MAX_BODY_BYTES = 1024;
+
+  /**
+   * Outcome of decoding one body.
+   */
+  enum Status {
+    OK,
+    MALFORMED,
+    TOO_LARGE,
+    INVALID // well-formed but fails the validation.properties range checks
+  }
+
+  private static final byte[] TIME = "time".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] LIFT_ID = "liftID".getBytes(StandardCharsets.US_ASCII);
+  private static final int NEEDS_FALLBACK = -2;
+
+  private final Gson gson;
+  private final ValidationRules rules;
+
+  // fields of the last successful decode on this instance
+  private int time;
+  private int liftID;
+
+  LiftRideDecoder(Gson gson, ValidationRules rules) {
+    this.gson = gson;
+    this.rules = rules;
+  }
+
+  /**
+   * Read the whole body into {@code buffer} (at most {@link #MAX_BODY_BYTES}) and decode it.
+   */
+  Status decode(InputStream in, byte[] buffer) throws IOException {
+    int length = 0;
+    int n;
+    while ((n = in.read(buffer, length, buffer.length - length)) != -1) {
+      length += n;
+      if (length == buffer.length) {
+        // buffer full: the body is only acceptable if the stream ends right here
+        if (in.read() != -1) {
+          return Status.TOO_LARGE;
+        }
+        break;
+      }
+    }
+    return decode(buffer, length);
+  }
+
+  /**
+   * Decode a body that has already been read into {@code bytes[0, length)}.
+   */
+  Status decode(byte[] bytes, int length) {
+    if (length > MAX_BODY_BYTES) {
+      return Status.TOO_LARGE;
+    }
+
+    int result = parse(bytes, length);
+    if (result == NEEDS_FALLBACK) {
+      return decodeWithGson(bytes, length);
+    }
+    if (result < 0) {
+      return Status.MALFORMED;
+    }
+    return rules.isValidRide(time, liftID) ? Status.OK : Status.INVALID;
+  }
+
+  /**
+   * The decoded ride; only meaningful after {@link Status#OK}.
+   */
+  LiftRide toLiftRide() {
+    LiftRide liftRide = new LiftRide();
+    liftRide.setTime(time);
+    liftRide.setLiftID(liftID);
+    return liftRide;
+  }
+
+  int getTime() {
+    return time;
+  }
+
+  int getLiftID() {
+    return liftID;
+  }
+
+  /**
+   * Fast path. Returns 0 on success, -1 if malformed, NEEDS_FALLBACK for valid-looking JSON
+   * this parser does not handle itself.
+   */
+  private int parse(byte[] b, int length) {
+    int t = 0;
+    int l = 0;
+    int pos = skipWhitespace(b, 0, length);
+    if (pos >= length || b[pos] != '{') {
+      return -1;
+    }
+    pos = skipWhitespace(b, pos + 1, length);
+
+    if (pos < length && b[pos] == '}') {
+      pos++;
+    } else {
+      while (true) {
+        // key
+        if (pos >= length || b[pos] != '"') {
+          return -1;
+        }
+        int keyStart = ++pos;
+        while (pos < length && b[pos] != '"') {
+          if (b[pos] == '\\') {
+            return NEEDS_FALLBACK; // escaped key
+          }
+          pos++;
+        }
+        if (pos >= length) {
+          return -1;
+        }
+        int keyEnd = pos++;
+        boolean isTime = matches(b, keyStart, keyEnd, TIME);
+        boolean isLift = !isTime && matches(b, keyStart, keyEnd, LIFT_ID);
+        if (!isTime && !isLift) {
+          return NEEDS_FALLBACK; // unknown field
+        }
+
+        pos = skipWhitespace(b, pos, length);
+        if (pos >= length || b[pos] != ':') {
+          return -1;
+        }
+        pos = skipWhitespace(b, pos + 1, length);
+
+        // integer value
+        boolean negative = pos < length && b[pos] == '-';
+        if (negative) {
+          pos++;
+        }
+        int digitsStart = pos;
+        long value = 0;
+        while (pos < length && b[pos] >= '0' && b[pos] <= '9') {
+          value = value * 10 + (b[pos++] - '0');
+          if (value > Integer.MAX_VALUE) {
+            return NEEDS_FALLBACK; // let Gson report the overflow
+          }
+        }
+        if (pos == digitsStart) {
+          return NEEDS_FALLBACK; // string, null, etc.
+        }
+        if (pos < length && (b[pos] == '.' || b[pos] == 'e' || b[pos] == 'E')) {
+          return NEEDS_FALLBACK; // 2.0 or 2e1
+        }
+        int v = (int) (negative ? -value : value);
+        if (isTime) {
+          t = v;
+        } else {
+          l = v;
+        }
+
+        pos = skipWhitespace(b, pos, length);
+        if (pos >= length) {
+          return -1;
+        }
+        if (b[pos] == ',') {
+          pos = skipWhitespace(b, pos + 1, length);
+          continue;
+        }
+        if (b[pos] == '}') {
+          pos++;
+          break;
+        }
+        return -1;
+      }
+    }
+
+    if (skipWhitespace(b, pos, length) != length) {
+      return -1; // trailing garbage
+    }
+    time = t;
+    liftID = l;
+    return 0;
+  }
+
+  private Status decodeWithGson(byte[] bytes, int length) {
+    LiftRide liftRide;
+    try (InputStreamReader reader = new InputStreamReader(
+        new ByteArrayInputStream(bytes, 0, length), StandardCharsets.UTF_8)) {
+      liftRide = gson.fromJson(reader, LiftRide.class);
+    } catch (JsonParseException | IOException e) {
+      return Status.MALFORMED;
+    }
+    if (liftRide == null) {
+      return Status.MALFORMED;
+    }
+    time = liftRide.getTime();
+    liftID = liftRide.getLiftID();
+    return rules.isValidRide(time, liftID) ? Status.OK : Status.INVALID;
+  }
+
+  private static boolean matches(byte[] b, int start, int end, byte[] expected) {
+    if (end - start != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (b[start + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int skipWhitespace(byte[] b, int pos, int length) {
+    while (pos < length && (b[pos] == ' ' || b[pos] == '\t' || b[pos] == '\n' || b[pos] == '\r')) {
+      pos++;
+    }
+    return pos;
+  }
+}
@@ -0,0 +1,47 @@
+package com.upic.api;
+
+import com.upic.cache.ReadCache;
+import com.upic.metrics.ServerMetrics;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves {@link ServerMetrics} (and the read cache counters) in the Prometheus text format.
+ */
+public class MetricsServlet extends HttpServlet {
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("text/plain; version=0.0.4");
+    response.setCharacterEncoding("UTF-8");
+    PrintWriter out = response.getWriter();
+    ServerMetrics.get().writePrometheus(out);
+
+    ReadCache<?, ?> cache = (ReadCache<?, ?>) getServletContext().getAttribute(CacheStatsServlet.CACHE_ATTRIBUTE);
+    if (cache != null) {
+      ReadCache.Stats stats = cache.stats();
+      writeCounter(out, "skiers_read_cache_hits_total", "Read cache hits.", stats.getHits());
+      writeCounter(out, "skiers_read_cache_negative_hits_total", "Read cache hits on \"No records found\".",
+          stats.getNegativeHits());
+      writeCounter(out, "skiers_read_cache_misses_total", "Read cache misses.", stats.getMisses());
+      writeCounter(out, "skiers_read_cache_evictions_total", "Entries evicted to make room.", stats.getEvictions());
+      writeCounter(out, "skiers_read_cache_expirations_total", "Entries dropped after their TTL.",
+          stats.getExpirations());
+      out.println("# HELP skiers_read_cache_entries Entries currently cached.");
+      out.println("# TYPE skiers_read_cache_entries gauge");
+      out.println("skiers_read_cache_entries " + stats.getSize());
+    }
+    out.flush();
+  }
+
+  private static void writeCounter(PrintWriter out, String name, String help, long value) {
+    out.println("# HELP " + name + " " + help);
+    out.println("# TYPE " + name + " counter");
+    out.println(name + " " + value);
+  }
+}
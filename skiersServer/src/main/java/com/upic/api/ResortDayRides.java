@@ -0,0 +1,134 @@
+package com.upic.api;
+
+import com.google.gson.stream.JsonWriter;
+import com.upic.db.SkierReadRepository.RideVisitor;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact accumulator for the rides of one resort day, plus the JSON writer for
+ * GET /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers.
+ *
+ * Rides are kept in parallel int arrays instead of one map per ride, then grouped by skier
+ * (rides in time order) and written straight to a {@link JsonWriter}:
+ * {"resortID":..,"seasonID":"..","dayID":"..","skiers":[{"skierID":..,"liftRides":[{"liftID":..,
+ * "time":..,"vertical":..}]}],"nextCursor":".."}. nextCursor is only present on paginated responses
+ * that have more data.
+ */
+class ResortDayRides implements RideVisitor {
+  private int[] skierIDs;
+  private int[] times;
+  private int[] liftIDs;
+  private int[] verticals;
+  private int size;
+
+  ResortDayRides(int initialCapacity) {
+    int capacity = Math.max(16, initialCapacity);
+    skierIDs = new int[capacity];
+    times = new int[capacity];
+    liftIDs = new int[capacity];
+    verticals = new int[capacity];
+  }
+
+  @Override
+  public void visit(int skierID, int time, int liftID, int vertical) {
+    if (size == skierIDs.length) {
+      int capacity = size * 2;
+      skierIDs = Arrays.copyOf(skierIDs, capacity);
+      times = Arrays.copyOf(times, capacity);
+      liftIDs = Arrays.copyOf(liftIDs, capacity);
+      verticals = Arrays.copyOf(verticals, capacity);
+    }
+    skierIDs[size] = skierID;
+    times[size] = time;
+    liftIDs[size] = liftID;
+    verticals[size] = vertical;
+    size++;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Order-independent hash of every ride, for the response's entity tag.
+   */
+  long contentHash() {
+    long hash = 0;
+    for (int i = 0; i < size; i++) {
+      hash = ETags.add(hash, ETags.pack(skierIDs[i], times[i]) * 31 + ETags.pack(liftIDs[i], verticals[i]));
+    }
+    return hash;
+  }
+
+  void write(JsonWriter out, int resortID, String seasonID, String dayID, String nextCursor) throws IOException {
+    out.beginObject();
+    out.name("resortID").value(resortID);
+    out.name("seasonID").value(seasonID);
+    out.name("dayID").value(dayID);
+    out.name("skiers").beginArray();
+
+    int[] order = sortedOrder();
+    int i = 0;
+    while (i < size) {
+      int skierID = skierIDs[order[i]];
+      out.beginObject();
+      out.name("skierID").value(skierID);
+      out.name("liftRides").beginArray();
+      for (; i < size && skierIDs[order[i]] == skierID; i++) {
+        int ride = order[i];
+        out.beginObject();
+        out.name("liftID").value(liftIDs[ride]);
+        out.name("time").value(times[ride]);
+        out.name("vertical").value(verticals[ride]);
+        out.endObject();
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    out.endArray();
+    if (nextCursor != null) {
+      out.name("nextCursor").value(nextCursor);
+    }
+    out.endObject();
+    out.flush();
+  }
+
+  /**
+   * Ride indexes ordered by skierID, then time.
+   */
+  private int[] sortedOrder() {
+    // skierID in the high half, ride index in the low half, so one primitive sort groups skiers
+    long[] keys = new long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = ((long) skierIDs[i] << 32) | i;
+    }
+    Arrays.sort(keys);
+
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = (int) keys[i];
+    }
+
+    // a skier has only a handful of rides per day, so insertion sort each group by time
+    int start = 0;
+    while (start < size) {
+      int end = start + 1;
+      while (end < size && skierIDs[order[end]] == skierIDs[order[start]]) {
+        end++;
+      }
+      for (int i = start + 1; i < end; i++) {
+        int ride = order[i];
+        int j = i - 1;
+        while (j >= start && times[order[j]] > times[ride]) {
+          order[j + 1] = order[j];
+          j--;
+        }
+        order[j + 1] = ride;
+      }
+      start = end;
+    }
+    return order;
+  }
+}
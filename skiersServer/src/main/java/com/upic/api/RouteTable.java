@@ -0,0 +1,176 @@
+package com.upic.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * URL routes for {@link SkierServlet}, compiled once in {@code init()}.
+ *
+ * A pattern such as {@code /{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}} is split
+ * into literal and numeric segments up front. Matching then walks the request's path info
+ * character by character and parses the numeric segments in place into a reusable
+ * {@link RouteMatch}, so routing a request creates no Strings, arrays or regex matchers.
+ */
+class RouteTable {
+
+  /**
+   * Every endpoint the servlet serves. The HTTP method picks the handler for a route.
+   */
+  enum Route {
+    SKIER_DAY,        // /skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}
+    SKIER_VERTICAL,   // /skiers/{skierID}/vertical
+    RESORT_DAY_SKIERS, // /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
+    RESORT_DAY_SKIER_COUNT, // /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers/count
+    BATCH             // /skiers/batch
+  }
+
+  /**
+   * Outcome of matching one path.
+   */
+  enum Status {
+    MATCHED,
+    INVALID_NUMBER, // the path has the shape of a route but a numeric segment is not a valid int
+    NOT_FOUND
+  }
+
+  /**
+   * Reusable match result; one per thread is enough.
+   */
+  static final class RouteMatch {
+    static final int MAX_PARAMS = 4;
+
+    Route route;
+    final int[] params = new int[MAX_PARAMS];
+    int paramCount;
+
+    /**
+     * Numeric path parameter in pattern order, e.g. 0 = resortID for SKIER_DAY.
+     */
+    int param(int index) {
+      return params[index];
+    }
+  }
+
+  private final List<CompiledRoute> routes = new ArrayList<>();
+
+  /**
+   * Add a route. {@code {name}} segments must be non-negative ints; everything else is literal.
+   */
+  RouteTable add(Route route, String servletPath, String pattern) {
+    routes.add(new CompiledRoute(route, servletPath, pattern));
+    return this;
+  }
+
+  /**
+   * Match a request path against the table.
+   *
+   * @param servletPath e.g. "/skiers" or "/resorts"
+   * @param pathInfo    the part after the servlet path, may be null
+   * @param match       filled in when the result is not NOT_FOUND
+   */
+  Status match(String servletPath, String pathInfo, RouteMatch match) {
+    if (pathInfo == null) {
+      return Status.NOT_FOUND;
+    }
+    for (int i = 0; i < routes.size(); i++) {
+      CompiledRoute route = routes.get(i);
+      if (!route.servletPath.equals(servletPath)) {
+        continue;
+      }
+      Status status = route.match(pathInfo, match);
+      if (status != Status.NOT_FOUND) {
+        match.route = route.route;
+        return status;
+      }
+    }
+    return Status.NOT_FOUND;
+  }
+
+  private static final class CompiledRoute {
+    final Route route;
+    final String servletPath;
+    // literal text per segment, or null where the segment is a numeric parameter
+    final String[] literals;
+
+    CompiledRoute(Route route, String servletPath, String pattern) {
+      this.route = route;
+      this.servletPath = servletPath;
+
+      if (!pattern.startsWith("/")) {
+        throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+      }
+      String[] segments = pattern.substring(1).split("/");
+      this.literals = new String[segments.length];
+      int params = 0;
+      for (int i = 0; i < segments.length; i++) {
+        String segment = segments[i];
+        if (segment.startsWith("{") && segment.endsWith("}")) {
+          params++;
+        } else {
+          literals[i] = segment;
+        }
+      }
+      if (params > RouteMatch.MAX_PARAMS) {
+        throw new IllegalArgumentException("Too many parameters in route: " + pattern);
+      }
+    }
+
+    Status match(String path, RouteMatch match) {
+      int length = path.length();
+      // tolerate one trailing slash
+      if (length > 1 && path.charAt(length - 1) == '/') {
+        length--;
+      }
+
+      int pos = 0;
+      int paramCount = 0;
+      boolean invalidNumber = false;
+
+      for (String literal : literals) {
+        if (pos >= length || path.charAt(pos) != '/') {
+          return Status.NOT_FOUND;
+        }
+        pos++;
+
+        if (literal != null) {
+          int end = pos + literal.length();
+          if (end > length || !path.regionMatches(pos, literal, 0, literal.length())
+              || (end < length && path.charAt(end) != '/')) {
+            return Status.NOT_FOUND;
+          }
+          pos = end;
+          continue;
+        }
+
+        // numeric parameter: parse digits until the next '/'
+        int start = pos;
+        long value = 0;
+        boolean digitsOnly = true;
+        while (pos < length && path.charAt(pos) != '/') {
+          char c = path.charAt(pos++);
+          if (c < '0' || c > '9') {
+            digitsOnly = false;
+          } else if (digitsOnly) {
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+              digitsOnly = false;
+            }
+          }
+        }
+        if (pos == start) {
+          return Status.NOT_FOUND; // empty segment
+        }
+        if (!digitsOnly) {
+          invalidNumber = true;
+        }
+        match.params[paramCount++] = (int) value;
+      }
+
+      if (pos != length) {
+        return Status.NOT_FOUND; // extra segments
+      }
+      match.paramCount = paramCount;
+      return invalidNumber ? Status.INVALID_NUMBER : Status.MATCHED;
+    }
+  }
+}
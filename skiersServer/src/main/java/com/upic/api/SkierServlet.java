@@ -1,34 +1,57 @@
 package com.upic.api;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
+import com.upic.api.RouteTable.Route;
+import com.upic.api.RouteTable.RouteMatch;
+import com.upic.api.RouteTable.Status;
+import com.upic.cache.CachedResponse;
+import com.upic.cache.ReadCache;
+import com.upic.cache.SingleFlight;
+import com.upic.config.CacheConfig;
+import com.upic.config.DynamoDBConfig;
+import com.upic.config.LimiterConfig;
+import com.upic.config.QuotaConfig;
+import com.upic.config.RabbitMQConfig;
+import com.upic.config.SpoolConfig;
+import com.upic.db.HedgedQueryExecutor;
+import com.upic.db.QueryDeadlineException;
+import com.upic.db.SkierReadRepository;
+import com.upic.limit.AdaptiveLimiter;
+import com.upic.limit.ResortQuotas;
+import com.upic.metrics.Endpoint;
+import com.upic.metrics.ServerMetrics;
+import com.upic.metrics.Stage;
 import com.upic.model.LiftRide;
+import com.upic.model.LiftRideRecord;
+import com.upic.queue.LiftRidePublisher;
 import com.upic.queue.MessageQueueProducer;
+import com.upic.queue.PublishStage;
+import com.upic.sketch.HyperLogLog;
+import com.upic.spool.IngestSpool;
+import com.upic.spool.SpoolReplayer;
+import com.upic.spool.SpoolingPublisher;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.InputStream;
-import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.HashMap;
-
-import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeoutException;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
-import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
-
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
-import java.net.URI;
 
 /**
  * Servlet for handling skier lift ride events.
@@ -46,8 +69,54 @@ import java.net.URI;
  * Validates both path parameters and request body before recording the event.
  */
 public class SkierServlet extends HttpServlet {
+    static final int SC_TOO_MANY_REQUESTS = 429; // not defined in HttpServletResponse
+
     private final Gson gson = new Gson(); // JSON parser for request body deserialization
+    private final ServerMetrics metrics = ServerMetrics.get(); // exported on /metrics
     private Properties validationProps;
+    private ValidationRules validationRules; // range checks parsed once from validationProps
+    private SkierReadRepository readRepository; // shared DynamoDB read client for all GET handlers
+    private MessageQueueProducer producer; // pooled RabbitMQ channels for POST handlers
+    private LiftRidePublisher ridePublisher; // producer, or producer + local spool fallback
+    private IngestSpool spool; // null when spooling is disabled
+    private SpoolReplayer spoolReplayer;
+    private boolean asyncIngest; // "ingestMode" init-param in web.xml: sync (default) or async
+    private long asyncTimeoutMs;
+    private PublishStage publishStage; // only created in async mode
+    private BatchIngestHandler batchIngestHandler; // POST /skiers/batch
+    private int maxDayPageSize; // upper bound for ?limit= on the resort-day endpoint
+    // separate adaptive concurrency limits so a read storm cannot starve ingest; null when disabled
+    private AdaptiveLimiter readLimiter;
+    private AdaptiveLimiter writeLimiter;
+    private AdaptiveLimiter batchLimiter;
+    private int retryAfterSeconds = 1;
+    // per-resort token buckets, checked before the limiters; null when disabled
+    private ResortQuotas ingestQuotas;
+    private ResortQuotas queryQuotas;
+    private ReadCache<String, CachedResponse> readCache; // rendered GET responses, null when disabled
+    private CacheConfig cacheConfig;
+    // identical concurrent resort-day queries share one DynamoDB call
+    private final SingleFlight<String, CachedResponse> resortDayQueries = new SingleFlight<>();
+    private GzipPool gzipPool; // pooled deflaters for GET bodies of at least compressMinBytes
+    private int compressMinBytes;
+
+    // URL patterns compiled once; matching reuses one RouteMatch per request thread
+    private final RouteTable routes = new RouteTable()
+            .add(Route.BATCH, "/skiers", "/batch")
+            .add(Route.SKIER_VERTICAL, "/skiers", "/{skierID}/vertical")
+            .add(Route.SKIER_DAY, "/skiers", "/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}")
+            .add(Route.RESORT_DAY_SKIERS, "/resorts", "/{resortID}/seasons/{seasonID}/day/{dayID}/skiers")
+            .add(Route.RESORT_DAY_SKIER_COUNT, "/resorts", "/{resortID}/seasons/{seasonID}/day/{dayID}/skiers/count");
+    private final ThreadLocal<RouteMatch> routeMatch = ThreadLocal.withInitial(RouteMatch::new);
+
+    // POST body decoding state, reused per request thread
+    private final ThreadLocal<LiftRideDecoder> liftRideDecoder =
+            ThreadLocal.withInitial(() -> new LiftRideDecoder(gson, validationRules));
+    private final ThreadLocal<byte[]> bodyBuffer =
+            ThreadLocal.withInitial(() -> new byte[LiftRideDecoder.MAX_BODY_BYTES]);
+
+    // set on requests that called DynamoDB or RabbitMQ; only those give the limiter a latency sample
+    private static final String BACKEND_CALLED = "com.upic.backendCalled";
 
     /**
      * Init and load resources file as constraints
@@ -71,6 +140,156 @@ public class SkierServlet extends HttpServlet {
         } catch (IOException e) {
             throw new ServletException("Error loading validation properties", e);
         }
+        validationRules = new ValidationRules(validationProps);
+
+        // one tuned DynamoDB client for the lifetime of the servlet
+        try {
+            readRepository = new SkierReadRepository(DynamoDBConfig.load());
+        } catch (IOException e) {
+            throw new ServletException("Error loading DynamoDB configuration", e);
+        }
+        for (HedgedQueryExecutor queries : readRepository.getQueryExecutors()) {
+            String labels = "query=\"" + queries.getName() + "\"";
+            metrics.registerCounter("skiers_dynamodb_queries_total", "DynamoDB read queries issued.",
+                    labels, queries::getQueryCount);
+            metrics.registerCounter("skiers_dynamodb_hedges_total", "Hedged duplicate DynamoDB queries sent.",
+                    labels, queries::getHedgeCount);
+            metrics.registerCounter("skiers_dynamodb_hedge_wins_total", "Hedged queries that answered first.",
+                    labels, queries::getHedgeWinCount);
+            metrics.registerCounter("skiers_dynamodb_deadline_exceeded_total", "Reads that missed their deadline.",
+                    labels, queries::getDeadlineMissCount);
+            metrics.registerGauge("skiers_dynamodb_hedge_delay_ms", "Current delay before a query is hedged.",
+                    labels, queries::getHedgeDelayMs);
+        }
+
+        // bounded channel pool shared by all request threads
+        try {
+            producer = new MessageQueueProducer(RabbitMQConfig.load());
+        } catch (IOException e) {
+            throw new ServletException("Error loading RabbitMQ configuration", e);
+        }
+
+        // rides the broker does not confirm quickly go to a local spool and are replayed later
+        ridePublisher = producer;
+        try {
+            SpoolConfig spoolConfig = SpoolConfig.load();
+            if (spoolConfig.isEnabled()) {
+                spool = spoolConfig.openSpool();
+                SpoolingPublisher spoolingPublisher =
+                        new SpoolingPublisher(producer, spool, spoolConfig.getPublishTimeoutMs());
+                spoolReplayer = new SpoolReplayer(spool, producer, spoolConfig.getReplayBatchSize(),
+                        spoolConfig.getReplayIntervalMs(), spoolConfig.getFsyncIntervalMs());
+                ridePublisher = spoolingPublisher;
+
+                metrics.registerGauge("skiers_spool_pending_records", "Lift rides in the spool waiting for replay.",
+                        "", spool::getPendingRecords);
+                metrics.registerGauge("skiers_spool_disk_bytes", "Disk space used by spool segments.",
+                        "", spool::getDiskBytes);
+                metrics.registerCounter("skiers_spool_appended_total", "Lift rides written to the spool.",
+                        "", spoolingPublisher::getSpooledRecords);
+                metrics.registerCounter("skiers_spool_replayed_total", "Spooled lift rides confirmed by the broker.",
+                        "", spoolReplayer::getReplayedRecords);
+                metrics.registerCounter("skiers_spool_full_total", "Lift rides rejected because the spool was full.",
+                        "", spoolingPublisher::getSpoolFullRejections);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ServletException("Error opening ingest spool", e);
+        }
+
+        // in-process cache for the per-skier GET endpoints
+        try {
+            cacheConfig = CacheConfig.load();
+        } catch (IOException e) {
+            throw new ServletException("Error loading cache configuration", e);
+        }
+        if (cacheConfig.isEnabled()) {
+            readCache = new ReadCache<>(cacheConfig.getMaxEntries());
+            getServletContext().setAttribute(CacheStatsServlet.CACHE_ATTRIBUTE, readCache);
+        }
+        getServletContext().setAttribute(CacheStatsServlet.SINGLE_FLIGHT_ATTRIBUTE, resortDayQueries);
+
+        // per-resort admission quotas
+        try {
+            QuotaConfig quotaConfig = QuotaConfig.load();
+            if (quotaConfig.isEnabled()) {
+                ingestQuotas = quotaConfig.buildQuotas("ingest", validationRules.getResortMax());
+                queryQuotas = quotaConfig.buildQuotas("query", validationRules.getResortMax());
+                registerQuotaMetrics(ingestQuotas);
+                registerQuotaMetrics(queryQuotas);
+            }
+        } catch (IOException e) {
+            throw new ServletException("Error loading quota configuration", e);
+        }
+
+        batchIngestHandler = new BatchIngestHandler(producer, gson, validationRules, ingestQuotas,
+                Integer.parseInt(getInitParameterOrDefault("maxBatchRecords", "1000")),
+                Long.parseLong(getInitParameterOrDefault("batchConfirmTimeoutMs", "10000")));
+
+        // load shedding in front of the DynamoDB and RabbitMQ calls
+        try {
+            LimiterConfig limiterConfig = LimiterConfig.load();
+            // also sent with single-flight timeouts, which happen with the limiter off
+            retryAfterSeconds = limiterConfig.getRetryAfterSeconds();
+            if (limiterConfig.isEnabled()) {
+                readLimiter = limiterConfig.buildLimiter("read");
+                writeLimiter = limiterConfig.buildLimiter("write");
+                batchLimiter = limiterConfig.buildLimiter("batch");
+                for (AdaptiveLimiter limiter : new AdaptiveLimiter[] {readLimiter, writeLimiter, batchLimiter}) {
+                    String labels = "kind=\"" + limiter.getName() + "\"";
+                    metrics.registerGauge("skiers_concurrency_limit", "Current adaptive concurrency limit.",
+                            labels, limiter::getLimit);
+                    metrics.registerGauge("skiers_concurrency_in_flight", "Requests holding a concurrency permit.",
+                            labels, limiter::getInFlight);
+                    metrics.registerCounter("skiers_requests_shed_total", "Requests rejected with 503 by the limiter.",
+                            labels, limiter::getRejectedCount);
+                }
+            }
+        } catch (IOException e) {
+            throw new ServletException("Error loading limiter configuration", e);
+        }
+
+        maxDayPageSize = Integer.parseInt(getInitParameterOrDefault("maxDayPageSize", "1000"));
+        compressMinBytes = Integer.parseInt(getInitParameterOrDefault("compressMinBytes", "1024"));
+        gzipPool = new GzipPool(Integer.parseInt(getInitParameterOrDefault("gzipPoolSize", "64")),
+                Integer.parseInt(getInitParameterOrDefault("gzipLevel", "4")));
+
+        // non-blocking POST handling, switched on in web.xml
+        asyncIngest = "async".equalsIgnoreCase(getInitParameter("ingestMode"));
+        if (asyncIngest) {
+            asyncTimeoutMs = Long.parseLong(getInitParameterOrDefault("asyncTimeoutMs", "10000"));
+            publishStage = new PublishStage(ridePublisher,
+                    Integer.parseInt(getInitParameterOrDefault("publishQueueCapacity", "10000")),
+                    Integer.parseInt(getInitParameterOrDefault("publisherThreads", "4")));
+        }
+    }
+
+    /**
+     * Release the DynamoDB and RabbitMQ connection pools when the container unloads the servlet.
+     */
+    @Override
+    public void destroy() {
+        if (publishStage != null) {
+            publishStage.close();
+        }
+        if (readRepository != null) {
+            readRepository.close();
+        }
+        if (spoolReplayer != null) {
+            spoolReplayer.close();
+        }
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                System.err.println("[!] Failed to close ingest spool: " + e.getMessage());
+            }
+        }
+        if (producer != null) {
+            producer.close();
+        }
+        getServletContext().removeAttribute(CacheStatsServlet.CACHE_ATTRIBUTE);
+        getServletContext().removeAttribute(CacheStatsServlet.SINGLE_FLIGHT_ATTRIBUTE);
+        super.destroy();
     }
 
     /**
@@ -84,169 +303,265 @@ public class SkierServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        long startNanos = System.nanoTime();
 
         // Set response content type to JSON
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
 
+        // Match the URL against the precompiled route table
+        RouteMatch match = routeMatch.get();
+        Status status = routes.match(request.getServletPath(), request.getPathInfo(), match);
+        Endpoint endpoint = status != Status.MATCHED ? Endpoint.UNMATCHED
+                : match.route == Route.BATCH ? Endpoint.POST_BATCH
+                : match.route == Route.SKIER_DAY ? Endpoint.POST_LIFT_RIDE
+                : Endpoint.UNMATCHED;
+
+        metrics.requestStarted(endpoint);
+        // batches are charged per record inside BatchIngestHandler
+        if (endpoint == Endpoint.POST_LIFT_RIDE && ingestQuotas != null && !ingestQuotas.tryAcquire(match.param(0))) {
+            sendQuotaExceededResponse(response);
+            metrics.requestFinished(endpoint, startNanos, response.getStatus());
+            return;
+        }
+        // a batch holds its permit through up to maxBatchRecords confirms, so it has its own limit
+        AdaptiveLimiter limiter = endpoint == Endpoint.UNMATCHED ? null
+                : endpoint == Endpoint.POST_BATCH ? batchLimiter : writeLimiter;
+        if (limiter != null && !limiter.tryAcquire()) {
+            sendOverloadedResponse(response);
+            metrics.requestFinished(endpoint, startNanos, response.getStatus());
+            return;
+        }
+
+        long permitStart = System.nanoTime();
+        boolean async = false;
         try {
-            // Extract path parameters from the URL
-            String pathInfo = request.getPathInfo(); // Retrieves the part after /skiers/
-            if (pathInfo == null || pathInfo.split("/").length != 8) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid URL format");
-                return;
+            async = handlePost(request, response, status, match, startNanos, limiter, permitStart);
+        } catch (Exception e) {
+            // Catch any unexpected errors and return a generic server error response
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error");
+        } finally {
+            // async requests are closed out by AsyncIngestHandler when they complete
+            if (!async) {
+                if (limiter != null) {
+                    releasePermit(limiter, permitStart, request, response);
+                }
+                metrics.requestFinished(endpoint, startNanos, response.getStatus());
             }
+        }
+    }
 
-            // Parse path parameters
-            String[] pathParts = pathInfo.split("/");
-            int resortID, skierID;
-            String seasonID, dayID;
+    /**
+     * @return true if the request was put into async mode and is still running
+     */
+    private boolean handlePost(HttpServletRequest request, HttpServletResponse response, Status status,
+                               RouteMatch match, long startNanos, AdaptiveLimiter limiter, long permitStart)
+            throws IOException {
+        if (status == Status.INVALID_NUMBER) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid number format in URL");
+            return false;
+        }
 
-            try {
-                resortID = Integer.parseInt(pathParts[1]);  // /skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}
-                seasonID = pathParts[3];
-                dayID = pathParts[5];
-                skierID = Integer.parseInt(pathParts[7]);
-            } catch (NumberFormatException e) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid number format in URL");
-                return;
+        // Bulk ingest: POST /skiers/batch with a JSON array or NDJSON body
+        if (status == Status.MATCHED && match.route == Route.BATCH) {
+            if (batchIngestHandler.handle(request.getReader(), response)) {
+                markBackendCall(request);
             }
+            return false;
+        }
 
-            // Validate path parameters
-            if (resortID < 1 || resortID > 10 || !seasonID.equals("2025") || !dayID.equals("1") || skierID < 1 || skierID > 100000) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid path parameters");
-                return;
-            }
+        if (status != Status.MATCHED || match.route != Route.SKIER_DAY) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid URL format");
+            return false;
+        }
 
-            // Read JSON request body
-            StringBuilder jsonBuilder = new StringBuilder();
-            BufferedReader reader = request.getReader();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonBuilder.append(line);
-            }
+        // /skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}
+        int resortID = match.param(0);
+        int skierID = match.param(3);
 
-            LiftRide liftRide;
-            try {
-                liftRide = gson.fromJson(jsonBuilder.toString(), LiftRide.class);
-            } catch (JsonSyntaxException e) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON format");
-                return;
-            }
+        // Validate path parameters
+        long stageStart = System.nanoTime();
+        boolean validPath = validationRules.isValidPath(resortID, match.param(1), match.param(2), skierID);
+        metrics.recordStage(Endpoint.POST_LIFT_RIDE, Stage.VALIDATE, stageStart);
+        if (!validPath) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid path parameters");
+            return false;
+        }
+        String seasonID = String.valueOf(match.param(1));
+        String dayID = String.valueOf(match.param(2));
 
+        // Reject oversized bodies before reading them
+        if (request.getContentLengthLong() > LiftRideDecoder.MAX_BODY_BYTES) {
+            sendErrorResponse(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+            return false;
+        }
 
-            // Validate request body parameters
-            if (liftRide == null || liftRide.getTime() < 1 || liftRide.getTime() > 360 || liftRide.getLiftID() < 1 || liftRide.getLiftID() > 40) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON payload");
-                return;
-            }
+        // In async mode the body is read and published without holding this thread
+        if (asyncIngest) {
+            AsyncIngestHandler.start(request.startAsync(), asyncTimeoutMs, publishStage,
+                    new LiftRideDecoder(gson, validationRules), resortID, seasonID, dayID, skierID, startNanos,
+                    limiter, permitStart);
+            return true;
+        }
 
-            // Send validated data to RabbitMQ
-            try {
-                MessageQueueProducer.sendMessage(liftRide, resortID, seasonID, dayID, skierID);
-                sendSuccessResponse(response, HttpServletResponse.SC_CREATED, "Lift ride added to queue");
-            } catch (Exception e) {
-                sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to enqueue message");
-            }
+        // Decode and validate the JSON body straight from the request bytes
+        stageStart = System.nanoTime();
+        LiftRideDecoder decoder = liftRideDecoder.get();
+        LiftRideDecoder.Status bodyStatus = decoder.decode(request.getInputStream(), bodyBuffer.get());
+        metrics.recordStage(Endpoint.POST_LIFT_RIDE, Stage.PARSE, stageStart);
+        if (bodyStatus != LiftRideDecoder.Status.OK) {
+            sendBodyError(response, bodyStatus);
+            return false;
+        }
+        LiftRide liftRide = decoder.toLiftRide();
 
+        // Send validated data to RabbitMQ, only answering 201 once the broker has confirmed it
+        stageStart = System.nanoTime();
+        markBackendCall(request);
+        try {
+            ridePublisher.sendMessage(liftRide, resortID, seasonID, dayID, skierID);
+            metrics.recordStage(Endpoint.POST_LIFT_RIDE, Stage.PUBLISH, stageStart);
+            sendSuccessResponse(response, HttpServletResponse.SC_CREATED, "Lift ride added to queue");
         } catch (Exception e) {
-            // Catch any unexpected errors and return a generic server error response
-            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error");
+            metrics.recordStage(Endpoint.POST_LIFT_RIDE, Stage.PUBLISH, stageStart);
+            metrics.publishFailed();
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to enqueue message");
         }
+        return false;
     }
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        long startNanos = System.nanoTime();
 
         String pathInfo = request.getPathInfo();
-        String servletPath = request.getServletPath();
-
-        if (pathInfo == null) {
-            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid URL format");
-            return;
+        RouteMatch match = routeMatch.get();
+        Status status = pathInfo == null ? Status.NOT_FOUND : routes.match(request.getServletPath(), pathInfo, match);
+        Endpoint endpoint = Endpoint.UNMATCHED;
+        if (status == Status.MATCHED) {
+            switch (match.route) {
+                case SKIER_VERTICAL: endpoint = Endpoint.GET_VERTICAL; break;
+                case SKIER_DAY: endpoint = Endpoint.GET_SKIER_DAY; break;
+                case RESORT_DAY_SKIERS: endpoint = Endpoint.GET_RESORT_DAY_SKIERS; break;
+                case RESORT_DAY_SKIER_COUNT: endpoint = Endpoint.GET_RESORT_DAY_SKIER_COUNT; break;
+                default: break;
+            }
         }
 
-        String[] parts = pathInfo.split("/");
-
-        // Handle GET /skiers/{skierID}/vertical
-        if (parts.length == 3 && parts[1].matches("\\d+") && parts[2].equals("vertical")) {
-            try {
-                int skierID = Integer.parseInt(parts[1]);
-                handleGetVertical(skierID, response);
-            } catch (NumberFormatException e) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid skierID");
-            }
+        metrics.requestStarted(endpoint);
+        metrics.recordStage(endpoint, Stage.PARSE, startNanos);
+        // GET /skiers/{skierID}/vertical names no resort
+        boolean resortScoped = endpoint == Endpoint.GET_SKIER_DAY || endpoint == Endpoint.GET_RESORT_DAY_SKIERS
+                || endpoint == Endpoint.GET_RESORT_DAY_SKIER_COUNT;
+        if (resortScoped && queryQuotas != null && !queryQuotas.tryAcquire(match.param(0))) {
+            sendQuotaExceededResponse(response);
+            metrics.requestFinished(endpoint, startNanos, response.getStatus());
             return;
         }
-
-        // Handle GET/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}
-        if (parts.length == 8 && parts[2].equals("seasons") && parts[4].equals("days") && parts[6].equals("skiers")) {
-            try {
-                int resortID = Integer.parseInt(parts[1]);
-                String seasonID = parts[3];
-                String dayID = parts[5];
-                int skierID = Integer.parseInt(parts[7]);
-
-                handleGetSkierDayData(resortID, seasonID, dayID, skierID, response);
-                return;
-            } catch (NumberFormatException e) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid number format in URL");
-            }
+        AdaptiveLimiter limiter = endpoint == Endpoint.UNMATCHED ? null : readLimiter;
+        if (limiter != null && !limiter.tryAcquire()) {
+            sendOverloadedResponse(response);
+            metrics.requestFinished(endpoint, startNanos, response.getStatus());
             return;
         }
 
-        // Handle /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
-        if ("/resorts".equals(servletPath) && parts.length >= 7 &&
-                "seasons".equals(parts[2]) && "day".equals(parts[4]) &&
-                "skiers".equals(parts[6])) {
-            try {
-                int resortID = Integer.parseInt(parts[1]);
-                String seasonID = parts[3];
-                String dayID = parts[5];
-
-                handleGetSkiersByDay(resortID, seasonID, dayID, response);
-                return;
-            } catch (NumberFormatException e) {
-                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid resortID");
-                return;
-            } catch (Exception e) {
-                e.printStackTrace();
-                sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                        "Error processing request: " + e.getMessage());
-                return;
+        long permitStart = System.nanoTime();
+        try {
+            handleGet(request, response, pathInfo, status, match);
+        } finally {
+            if (limiter != null) {
+                releasePermit(limiter, permitStart, request, response);
             }
+            metrics.requestFinished(endpoint, startNanos, response.getStatus());
         }
-
-        sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Unknown GET path: " + pathInfo);
     }
 
+    /**
+     * Give back the request's limiter permit, with a latency sample only if the request waited
+     * on DynamoDB or RabbitMQ and was not turned away as a bad request.
+     */
+    private static void releasePermit(AdaptiveLimiter limiter, long permitStart, HttpServletRequest request,
+                                      HttpServletResponse response) {
+        int statusCode = response.getStatus();
+        boolean clientError = statusCode >= HttpServletResponse.SC_BAD_REQUEST
+                && statusCode < HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        if (request.getAttribute(BACKEND_CALLED) == null || clientError) {
+            limiter.releaseUnsampled();
+        } else {
+            limiter.release(permitStart, statusCode >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
 
-    private void handleGetVertical(int skierID, HttpServletResponse response) throws IOException {
-        try {
-            DynamoDbClient dynamoDbClient = DynamoDbClient.create();
+    private static void markBackendCall(HttpServletRequest request) {
+        request.setAttribute(BACKEND_CALLED, Boolean.TRUE);
+    }
 
-            String prefix = "2025_"; // fixed season
-            QueryRequest request = QueryRequest.builder()
-                    .tableName("LiftRides")
-                    .keyConditionExpression("skierID = :skierID AND begins_with(dateKey, :prefix)")
-                    .expressionAttributeValues(Map.of(
-                            ":skierID", AttributeValue.builder().n(String.valueOf(skierID)).build(),
-                            ":prefix", AttributeValue.builder().s(prefix).build()
-                    ))
-                    .build();
+    private void handleGet(HttpServletRequest request, HttpServletResponse response, String pathInfo,
+                           Status status, RouteMatch match) throws IOException {
+        if (pathInfo == null) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid URL format");
+            return;
+        }
+        if (status == Status.INVALID_NUMBER) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid number format in URL");
+            return;
+        }
+        if (status == Status.NOT_FOUND || match.route == Route.BATCH) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Unknown GET path: " + pathInfo);
+            return;
+        }
 
-            QueryResponse result = dynamoDbClient.query(request);
+        switch (match.route) {
+            case SKIER_VERTICAL:
+                // GET /skiers/{skierID}/vertical
+                handleGetVertical(match.param(0), request, response);
+                break;
+            case SKIER_DAY:
+                // GET /skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}
+                handleGetSkierDayData(match.param(0), String.valueOf(match.param(1)),
+                        String.valueOf(match.param(2)), match.param(3), request, response);
+                break;
+            case RESORT_DAY_SKIERS:
+                // GET /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
+                handleGetSkiersByDay(match.param(0), String.valueOf(match.param(1)),
+                        String.valueOf(match.param(2)), request, response);
+                break;
+            case RESORT_DAY_SKIER_COUNT:
+                // GET /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers/count
+                handleGetSkierCount(match.param(0), String.valueOf(match.param(1)),
+                        String.valueOf(match.param(2)), request, response);
+                break;
+            default:
+                sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Unknown GET path: " + pathInfo);
+        }
+    }
 
-            int totalVertical = result.items().stream()
-                    .mapToInt(item -> Integer.parseInt(item.get("vertical").n()))
-                    .sum();
 
-            String json = gson.toJson(Map.of("skierID", skierID, "totalVertical", totalVertical));
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.setContentType("application/json");
-            response.getWriter().write(json);
+    private void handleGetVertical(int skierID, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String cacheKey = "vertical:" + skierID;
+        if (writeCached(cacheKey, request, response)) {
+            return;
+        }
 
+        try {
+            markBackendCall(request);
+            long stageStart = System.nanoTime();
+            int totalVertical = readRepository.getTotalVertical(skierID, "2025"); // fixed season
+            metrics.recordStage(Endpoint.GET_VERTICAL, Stage.QUERY, stageStart);
+
+            stageStart = System.nanoTime();
+            byte[] json = gson.toJson(Map.of("skierID", skierID, "totalVertical", totalVertical))
+                    .getBytes(StandardCharsets.UTF_8);
+            metrics.recordStage(Endpoint.GET_VERTICAL, Stage.SERIALIZE, stageStart);
+            CachedResponse rendered = new CachedResponse(HttpServletResponse.SC_OK, json,
+                    ETags.of(1, ETags.add(0, totalVertical)));
+            cachePut(cacheKey, rendered, cacheConfig.getVerticalTtlMs(), false);
+            writeResponse(request, response, rendered);
+
+        } catch (QueryDeadlineException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "Timed out getting vertical");
         } catch (Exception e) {
             e.printStackTrace();
             sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to get vertical");
@@ -259,65 +574,63 @@ public class SkierServlet extends HttpServlet {
      * @param seasonID
      * @param dayID
      * @param skierID
+     * @param request
      * @param response
      * @throws IOException
      */
     private void handleGetSkierDayData(int resortID, String seasonID, String dayID, int skierID,
-                                       HttpServletResponse response) throws IOException {
-        // get validation boundary from Properties
-        int resortMin = Integer.parseInt(validationProps.getProperty("validation.resort.min", "1"));
-        int resortMax = Integer.parseInt(validationProps.getProperty("validation.resort.max", "10"));
-        String seasonMin = validationProps.getProperty("validation.season.min", "2025");
-        String seasonMax = validationProps.getProperty("validation.season.max", "2025");
-        int dayMin = Integer.parseInt(validationProps.getProperty("validation.day.min", "1"));
-        int dayMax = Integer.parseInt(validationProps.getProperty("validation.day.max", "366"));
-        int skierMin = Integer.parseInt(validationProps.getProperty("validation.skier.min", "1"));
-        int skierMax = Integer.parseInt(validationProps.getProperty("validation.skier.max", "100000"));
-
+                                       HttpServletRequest request, HttpServletResponse response) throws IOException {
         // validate the values in URL
-        if (resortID < resortMin || resortID > resortMax ||
-                !seasonID.equals(seasonMin) || // Assume seasonID is equal to seasonMin currently
-                Integer.parseInt(dayID) < dayMin || Integer.parseInt(dayID) > dayMax ||
-                skierID < skierMin || skierID > skierMax
-        ) {
-
+        long stageStart = System.nanoTime();
+        boolean validPath = validationRules.isValidPath(resortID, seasonID, dayID, skierID);
+        metrics.recordStage(Endpoint.GET_SKIER_DAY, Stage.VALIDATE, stageStart);
+        if (!validPath) {
             sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid path parameters");
             return;
         }
 
-        try {
-            DynamoDbClient dynamoDbClient = DynamoDbClient.create();
+        String cacheKey = "day:" + resortID + ':' + seasonID + ':' + dayID + ':' + skierID;
+        if (writeCached(cacheKey, request, response)) {
+            return;
+        }
 
+        try {
             // query items by seasonID, dayID and skierID , which are combined as sortKey in GSI
-            String seasonDaySkier = seasonID + "_" + dayID + "_" + skierID;
-
-            QueryRequest request = QueryRequest.builder()
-                    .tableName("LiftRides")
-                    .indexName("resort-season-day-skier-index")
-                    .keyConditionExpression("resortID = :resortID AND seasonDaySkier = :sdsk")
-                    .expressionAttributeValues(Map.of(
-                            ":resortID", AttributeValue.builder().n(String.valueOf(resortID)).build(),
-                            ":sdsk", AttributeValue.builder().s(seasonDaySkier).build()
-                    ))
-                    .build();
-
-            QueryResponse result = dynamoDbClient.query(request);
+            markBackendCall(request);
+            stageStart = System.nanoTime();
+            List<LiftRideRecord> rides = readRepository.getSkierDayRides(resortID, seasonID, dayID, skierID);
+            metrics.recordStage(Endpoint.GET_SKIER_DAY, Stage.QUERY, stageStart);
 
             // if not find the item
-            if (result.items().isEmpty()) {
-                sendSuccessResponse(response, HttpServletResponse.SC_OK,
-                        "No records found for skier " + skierID + " on day " + dayID);
+            if (rides.isEmpty()) {
+                String message = "No records found for skier " + skierID + " on day " + dayID;
+                CachedResponse rendered = new CachedResponse(HttpServletResponse.SC_OK,
+                        ("{\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8), ETags.of(0, 0));
+                cachePut(cacheKey, rendered, cacheConfig.getNegativeTtlMs(), true);
+                writeResponse(request, response, rendered);
+                return;
+            }
+
+            long contentHash = 0;
+            for (LiftRideRecord ride : rides) {
+                contentHash = ETags.add(contentHash,
+                        ETags.pack(ride.getTime(), ride.getLiftID()) * 31 + ride.getVertical());
+            }
+            String etag = ETags.of(rides.size(), contentHash);
+            // without a cache the body would only be thrown away, so skip rendering it
+            if (readCache == null && writeNotModified(request, response, etag)) {
                 return;
             }
 
             // Process query result，build JSON
+            stageStart = System.nanoTime();
             List<Map<String, Object>> liftRides = new ArrayList<>();
 
-            for (Map<String, AttributeValue> item : result.items()) {
+            for (LiftRideRecord ride : rides) {
                 Map<String, Object> liftRide = new HashMap<>();
-                liftRide.put("time", Integer.parseInt(item.get("time").n()));
-                liftRide.put("liftID", Integer.parseInt(item.get("liftID").n()));
-                liftRide.put("vertical", Integer.parseInt(item.get("vertical").n()));
+                liftRide.put("time", ride.getTime());
+                liftRide.put("liftID", ride.getLiftID());
+                liftRide.put("vertical", ride.getVertical());
                 liftRides.add(liftRide);
             }
 
@@ -328,11 +641,14 @@ public class SkierServlet extends HttpServlet {
             responseData.put("dayID", dayID);
             responseData.put("liftRides", liftRides);
 
-            String json = gson.toJson(responseData);
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.setContentType("application/json");
-            response.getWriter().write(json);
+            byte[] json = gson.toJson(responseData).getBytes(StandardCharsets.UTF_8);
+            metrics.recordStage(Endpoint.GET_SKIER_DAY, Stage.SERIALIZE, stageStart);
+            CachedResponse rendered = new CachedResponse(HttpServletResponse.SC_OK, json, etag);
+            cachePut(cacheKey, rendered, cacheConfig.getSkierDayTtlMs(), false);
+            writeResponse(request, response, rendered);
 
+        } catch (QueryDeadlineException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "Timed out getting skier day data");
         } catch (Exception e) {
             e.printStackTrace();
             sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
@@ -342,89 +658,352 @@ public class SkierServlet extends HttpServlet {
 
     /**
      * Handle GET /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
-     * Returns a list of skiers at the specified resort on the specified day
+     * Returns a list of skiers at the specified resort on the specified day.
+     *
+     * Without query parameters the whole day is returned; concurrent requests for the same
+     * resort/day wait on one query, and the rendered bytes are reused for a short window
+     * afterwards. With {@code ?limit=N} (and {@code &cursor=} from a previous response's
+     * {@code nextCursor}) at most N rides are read and streamed straight to the response.
      */
-    private void handleGetSkiersByDay(int resortID, String seasonID, String dayID, HttpServletResponse response) throws IOException {
-        try {
-            DynamoDbClient dynamoDbClient = DynamoDbClient.create();
+    private void handleGetSkiersByDay(int resortID, String seasonID, String dayID, HttpServletRequest request,
+                                      HttpServletResponse response) throws IOException {
+        String limitParam = request.getParameter("limit");
+        String cursorParam = request.getParameter("cursor");
+        if (limitParam != null || cursorParam != null) {
+            handleGetSkiersByDayPage(resortID, seasonID, dayID, limitParam, cursorParam, request, response);
+            return;
+        }
 
-            // Create the dateKey prefix for queries (matches how data is stored in DynamoDB)
-            String dateKeyPrefix = seasonID + "_" + dayID + "_";
+        String cacheKey = "resortDay:" + resortID + ':' + seasonID + ':' + dayID;
+        if (writeCached(cacheKey, request, response)) {
+            return;
+        }
 
-            // Query DynamoDB for all skiers on this day at this resort using the GSI
-            QueryRequest request = QueryRequest.builder()
-                    .tableName("LiftRides")
-                    .indexName("resortDateIndex") // Use the GSI here
-                    .keyConditionExpression("resortID = :resortID AND begins_with(dateKey, :dateKeyPrefix)")
-                    .expressionAttributeValues(Map.of(
-                            ":resortID", AttributeValue.builder().n(String.valueOf(resortID)).build(),
-                            ":dateKeyPrefix", AttributeValue.builder().s(dateKeyPrefix).build()
-                    ))
-                    .build();
+        CachedResponse result;
+        // also when joining another request's query: the wait is DynamoDB's latency
+        markBackendCall(request);
+        try {
+            result = resortDayQueries.execute(cacheKey, () -> {
+                CachedResponse rendered = renderSkiersByDay(resortID, seasonID, dayID);
+                if (readCache != null) {
+                    readCache.put(cacheKey, rendered, cacheConfig.getResortDayTtlMs());
+                }
+                return rendered;
+            }, cacheConfig.getResortDayWaitTimeoutMs());
+        } catch (TimeoutException e) {
+            // the shared query is still running; same 503 and Retry-After as a shed request
+            sendOverloadedResponse(response);
+            return;
+        } catch (QueryDeadlineException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "Timed out getting skiers for day");
+            return;
+        } catch (Exception e) {
+            e.printStackTrace();
+            String errorMessage = (e.getMessage() != null) ? e.getMessage() : e.toString();
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                "Failed to get skiers for day: " + errorMessage);
+            return;
+        }
+        writeResponse(request, response, result);
+    }
 
-            QueryResponse result = dynamoDbClient.query(request);
+    /**
+     * Handle GET /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers/count
+     *
+     * Approximate number of distinct skiers at the resort on the day, from the HyperLogLog
+     * sketches the consumers maintain: {"numSkiers":..,"relativeStandardError":..,"errorBound":..}.
+     * About 95% of answers are within errorBound of the true count. The cost does not depend on
+     * how many rides the day had.
+     */
+    private void handleGetSkierCount(int resortID, String seasonID, String dayID, HttpServletRequest request,
+                                     HttpServletResponse response) throws IOException {
+        long stageStart = System.nanoTime();
+        boolean validPath = validationRules.isValidResortDay(resortID, seasonID, dayID);
+        metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIER_COUNT, Stage.VALIDATE, stageStart);
+        if (!validPath) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid path parameters");
+            return;
+        }
 
-            // Extract unique skier IDs and their lift ride data
-            Map<Integer, List<Map<String, Object>>> skierRidesMap = new HashMap<>();
+        String cacheKey = "skierCount:" + resortID + ':' + seasonID + ':' + dayID;
+        if (writeCached(cacheKey, request, response)) {
+            return;
+        }
 
+        try {
+            markBackendCall(request);
+            stageStart = System.nanoTime();
+            HyperLogLog sketch = readRepository.getResortDaySkierSketch(resortID, seasonID, dayID);
+            long estimate = sketch == null ? 0 : sketch.estimate();
+            double standardError = sketch == null ? 0 : sketch.relativeStandardError();
+            metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIER_COUNT, Stage.QUERY, stageStart);
+
+            stageStart = System.nanoTime();
+            Map<String, Object> responseData = new LinkedHashMap<>();
+            responseData.put("resortID", resortID);
+            responseData.put("seasonID", seasonID);
+            responseData.put("dayID", dayID);
+            responseData.put("numSkiers", estimate);
+            responseData.put("relativeStandardError", standardError);
+            responseData.put("errorBound", (long) Math.ceil(2 * standardError * estimate));
+            byte[] json = gson.toJson(responseData).getBytes(StandardCharsets.UTF_8);
+            metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIER_COUNT, Stage.SERIALIZE, stageStart);
+
+            CachedResponse rendered = new CachedResponse(HttpServletResponse.SC_OK, json,
+                    ETags.of(1, ETags.add(0, estimate)));
+            cachePut(cacheKey, rendered, cacheConfig.getResortDayTtlMs(), false);
+            writeResponse(request, response, rendered);
+
+        } catch (QueryDeadlineException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "Timed out getting skier count");
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to get skier count");
+        }
+    }
 
-            for (Map<String, AttributeValue> item : result.items()) {
-                // Check if required properties exist
-                if (item.get("skierID") == null || item.get("liftID") == null || item.get("time") == null) {
-                    // Skip record if missing required properties
-                    continue;
-                }
-                // For vertical, if missing, set a default value (i.e. 0)
-                int skierID = Integer.parseInt(item.get("skierID").n());
-                int liftID = Integer.parseInt(item.get("liftID").n());
-                int time = Integer.parseInt(item.get("time").n());
-                int vertical = (item.get("vertical") != null && item.get("vertical").n() != null)
-                    ? Integer.parseInt(item.get("vertical").n())
-                    : 0;  // Default to zero if vertical is missing
-
-                Map<String, Object> rideData = new HashMap<>();
-                rideData.put("liftID", liftID);
-                rideData.put("time", time);
-                rideData.put("vertical", vertical);
-
-                // Add to map, creating list if needed
-                skierRidesMap.computeIfAbsent(skierID, k -> new ArrayList<>()).add(rideData);
-            }
+    /**
+     * Query DynamoDB for every ride at the resort on the day and render the response body.
+     */
+    private CachedResponse renderSkiersByDay(int resortID, String seasonID, String dayID) throws IOException {
+        long stageStart = System.nanoTime();
+        ResortDayRides rides = new ResortDayRides(1024);
+        readRepository.forEachResortDayRide(resortID, seasonID, dayID, rides);
+        metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIERS, Stage.QUERY, stageStart);
+
+        stageStart = System.nanoTime();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(256, rides.size() * 48));
+        rides.write(new JsonWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8)),
+                resortID, seasonID, dayID, null);
+        metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIERS, Stage.SERIALIZE, stageStart);
+        return new CachedResponse(HttpServletResponse.SC_OK, body.toByteArray(),
+                ETags.of(rides.size(), rides.contentHash()));
+    }
 
+    /**
+     * GET /resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers?limit=N&cursor=...
+     *
+     * Rides are grouped by skier within the page only, so a skier can show up again on the
+     * next page. Pages bypass the read cache and request coalescing.
+     */
+    private void handleGetSkiersByDayPage(int resortID, String seasonID, String dayID, String limitParam,
+                                          String cursorParam, HttpServletRequest request,
+                                          HttpServletResponse response) throws IOException {
+        int limit;
+        try {
+            limit = limitParam == null ? maxDayPageSize : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > maxDayPageSize) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST,
+                    "limit must be between 1 and " + maxDayPageSize);
+            return;
+        }
 
-            // Convert to response format
-            List<Map<String, Object>> skiersList = new ArrayList<>();
-            for (Map.Entry<Integer, List<Map<String, Object>>> entry : skierRidesMap.entrySet()) {
-                Map<String, Object> skierData = new HashMap<>();
-                skierData.put("skierID", entry.getKey());
-                skierData.put("liftRides", entry.getValue());
-                skiersList.add(skierData);
+        Map<String, AttributeValue> startKey = null;
+        if (cursorParam != null && !cursorParam.isEmpty()) {
+            try {
+                startKey = SkierReadRepository.decodeCursor(cursorParam);
+            } catch (IllegalArgumentException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor");
+                return;
             }
+        }
 
-            // Create and send the response
-            Map<String, Object> responseMap = new HashMap<>();
-            responseMap.put("resortID", resortID);
-            responseMap.put("seasonID", seasonID);
-            responseMap.put("dayID", dayID);
-            responseMap.put("skiers", skiersList);
-
-            String json = gson.toJson(responseMap);
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.setContentType("application/json");
-            response.getWriter().write(json);
+        ResortDayRides rides = new ResortDayRides(limit);
+        Map<String, AttributeValue> nextKey;
+        long stageStart = System.nanoTime();
+        markBackendCall(request);
+        try {
+            nextKey = readRepository.visitResortDayPage(resortID, seasonID, dayID, startKey, limit, rides);
+            metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIERS, Stage.QUERY, stageStart);
+        } catch (QueryDeadlineException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "Timed out getting skiers for day");
+            return;
+        } catch (IllegalArgumentException e) {
+            // the cursor decoded but is not a key of this resort day (other day, resort or shape)
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor");
+            return;
         } catch (Exception e) {
             e.printStackTrace();
             String errorMessage = (e.getMessage() != null) ? e.getMessage() : e.toString();
             sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
                 "Failed to get skiers for day: " + errorMessage);
+            return;
+        }
+
+        String nextCursor = nextKey == null ? null : SkierReadRepository.encodeCursor(nextKey);
+        String etag = ETags.of(rides.size(),
+                ETags.add(rides.contentHash(), nextCursor == null ? 0 : nextCursor.hashCode()));
+        if (writeNotModified(request, response, etag)) {
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Vary", "Accept-Encoding");
+        // the body is streamed, so judge by the ride count (about 40 bytes of JSON per ride)
+        OutputStream out = response.getOutputStream();
+        if (rides.size() * 40 >= compressMinBytes && GzipPool.accepts(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.setHeader("ETag", ETags.gzip(etag));
+            out = gzipPool.wrap(out);
+        } else {
+            response.setHeader("ETag", etag);
+        }
+        stageStart = System.nanoTime();
+        try (OutputStream body = out) {
+            rides.write(new JsonWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8)),
+                    resortID, seasonID, dayID, nextCursor);
+        }
+        metrics.recordStage(Endpoint.GET_RESORT_DAY_SKIERS, Stage.SERIALIZE, stageStart);
+    }
+
+    /**
+     * Write a cached response if there is a live entry for the key.
+     *
+     * @return true if the response has been written
+     */
+    private boolean writeCached(String cacheKey, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (readCache == null) {
+            return false;
+        }
+        CachedResponse cached = readCache.get(cacheKey);
+        if (cached == null) {
+            return false;
+        }
+        writeResponse(request, response, cached);
+        return true;
+    }
+
+    private void cachePut(String cacheKey, CachedResponse cached, long ttlMs, boolean negative) {
+        if (readCache == null) {
+            return;
+        }
+        if (negative) {
+            readCache.putNegative(cacheKey, cached, ttlMs);
+        } else {
+            readCache.put(cacheKey, cached, ttlMs);
+        }
+    }
+
+    /**
+     * Write a rendered GET response: 304 if the client already has it, otherwise the body,
+     * gzip-encoded when it is large enough and the client accepts gzip.
+     */
+    private void writeResponse(HttpServletRequest request, HttpServletResponse response, CachedResponse rendered)
+            throws IOException {
+        String etag = rendered.getEtag();
+        if (etag == null) {
+            writeJson(response, rendered.getStatus(), rendered.getBody());
+            return;
+        }
+        if (writeNotModified(request, response, etag)) {
+            return;
+        }
+
+        response.setHeader("Vary", "Accept-Encoding");
+        byte[] body = rendered.getBody();
+        if (body.length < compressMinBytes || !GzipPool.accepts(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("ETag", etag);
+            writeJson(response, rendered.getStatus(), body);
+            return;
+        }
+        byte[] gzipBody = rendered.getGzipBody();
+        if (gzipBody == null) {
+            gzipBody = gzipPool.compress(body);
+            rendered.setGzipBody(gzipBody); // cached responses keep the compressed copy for later hits
+        }
+        response.setHeader("ETag", ETags.gzip(etag));
+        response.setHeader("Content-Encoding", "gzip");
+        writeJson(response, rendered.getStatus(), gzipBody);
+    }
+
+    /**
+     * Answer 304 if {@code If-None-Match} matches {@code etag}.
+     *
+     * @return true if the response has been written
+     */
+    private static boolean writeNotModified(HttpServletRequest request, HttpServletResponse response, String etag) {
+        String matched = ETags.match(request.getHeader("If-None-Match"), etag);
+        if (matched == null) {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        response.setHeader("ETag", matched);
+        response.setHeader("Vary", "Accept-Encoding");
+        return true;
+    }
+
+    /**
+     * Write an already serialized UTF-8 JSON body.
+     */
+    private static void writeJson(HttpServletResponse response, int statusCode, byte[] json) throws IOException {
+        response.setStatus(statusCode);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(json.length);
+        response.getOutputStream().write(json);
+    }
+
+    /**
+     * Map a failed body decode to its 4xx response.
+     */
+    static void sendBodyError(HttpServletResponse response, LiftRideDecoder.Status status) throws IOException {
+        switch (status) {
+            case TOO_LARGE:
+                sendErrorResponse(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+                break;
+            case MALFORMED:
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON format");
+                break;
+            default:
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON payload");
         }
+    }
+
+    private String getInitParameterOrDefault(String name, String defaultValue) {
+        String value = getInitParameter(name);
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Shed a request the concurrency limiter turned away.
+     */
+    private void sendOverloadedResponse(HttpServletResponse response) throws IOException {
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server overloaded, retry later");
+    }
+
+    /**
+     * Reject a request from a resort that is over its quota.
+     */
+    static void sendQuotaExceededResponse(HttpServletResponse response) throws IOException {
+        response.setHeader("Retry-After", "1");
+        sendErrorResponse(response, SC_TOO_MANY_REQUESTS, "Resort quota exceeded");
+    }
 
+    private void registerQuotaMetrics(ResortQuotas quotas) {
+        for (int resortID = 0; resortID <= quotas.getMaxResortID(); resortID++) {
+            if (!quotas.hasQuota(resortID)) {
+                continue;
+            }
+            int id = resortID;
+            String labels = "kind=\"" + quotas.getName() + "\",resort=\"" + resortID + "\"";
+            metrics.registerCounter("skiers_resort_quota_admitted_total", "Requests admitted by the resort quota.",
+                    labels, () -> quotas.getAdmittedCount(id));
+            metrics.registerCounter("skiers_resort_quota_throttled_total", "Requests rejected with 429 by the resort quota.",
+                    labels, () -> quotas.getThrottledCount(id));
+        }
     }
 
     /**
      * Utility method to send a JSON error response.
      */
-    private void sendErrorResponse(HttpServletResponse response, int statusCode, String message) throws IOException {
+    static void sendErrorResponse(HttpServletResponse response, int statusCode, String message) throws IOException {
         response.setStatus(statusCode);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
@@ -436,7 +1015,7 @@ public class SkierServlet extends HttpServlet {
     /**
      * Utility method to send a JSON success response.
      */
-    private void sendSuccessResponse(HttpServletResponse response, int statusCode, String message) throws IOException {
+    static void sendSuccessResponse(HttpServletResponse response, int statusCode, String message) throws IOException {
         response.setStatus(statusCode);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
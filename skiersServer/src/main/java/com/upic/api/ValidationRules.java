@@ -0,0 +1,98 @@
+package com.upic.api;
+
+import java.util.Properties;
+
+/**
+ * Range checks for path parameters and lift ride bodies, read once from validation.properties.
+ */
+class ValidationRules {
+  private final int resortMin;
+  private final int resortMax;
+  private final int seasonMin;
+  private final int seasonMax;
+  private final int dayMin;
+  private final int dayMax;
+  private final int skierMin;
+  private final int skierMax;
+  private final int liftMin;
+  private final int liftMax;
+  private final int timeMin;
+  private final int timeMax;
+
+  ValidationRules(Properties props) {
+    this.resortMin = getInt(props, "validation.resort.min", 1);
+    this.resortMax = getInt(props, "validation.resort.max", 10);
+    this.seasonMin = getInt(props, "validation.season.min", 2025);
+    this.seasonMax = getInt(props, "validation.season.max", 2025);
+    this.dayMin = getInt(props, "validation.day.min", 1);
+    this.dayMax = getInt(props, "validation.day.max", 366);
+    this.skierMin = getInt(props, "validation.skier.min", 1);
+    this.skierMax = getInt(props, "validation.skier.max", 100000);
+    this.liftMin = getInt(props, "validation.lift.min", 1);
+    this.liftMax = getInt(props, "validation.lift.max", 40);
+    this.timeMin = getInt(props, "validation.time.min", 1);
+    this.timeMax = getInt(props, "validation.time.max", 360);
+  }
+
+  boolean isValidPath(int resortID, int seasonID, int dayID, int skierID) {
+    return isValidResort(resortID)
+        && seasonID >= seasonMin && seasonID <= seasonMax
+        && dayID >= dayMin && dayID <= dayMax
+        && skierID >= skierMin && skierID <= skierMax;
+  }
+
+  /**
+   * Same as {@link #isValidPath(int, int, int, int)} for season/day IDs that arrive as strings.
+   */
+  boolean isValidPath(int resortID, String seasonID, String dayID, int skierID) {
+    int season = parseId(seasonID);
+    int day = parseId(dayID);
+    return season >= 0 && day >= 0 && isValidPath(resortID, season, day, skierID);
+  }
+
+  /**
+   * Range check for the resort-day path parameters, which name no skier.
+   */
+  boolean isValidResortDay(int resortID, String seasonID, String dayID) {
+    int season = parseId(seasonID);
+    int day = parseId(dayID);
+    return isValidResort(resortID)
+        && season >= seasonMin && season <= seasonMax
+        && day >= dayMin && day <= dayMax;
+  }
+
+  boolean isValidResort(int resortID) {
+    return resortID >= resortMin && resortID <= resortMax;
+  }
+
+  int getResortMax() {
+    return resortMax;
+  }
+
+  boolean isValidRide(int time, int liftID) {
+    return time >= timeMin && time <= timeMax && liftID >= liftMin && liftID <= liftMax;
+  }
+
+  /**
+   * Parse a non-negative decimal ID, or return -1 if it is not one.
+   */
+  private static int parseId(String id) {
+    if (id == null || id.isEmpty() || id.length() > 9) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static int getInt(Properties props, String key, int defaultValue) {
+    String value = props.getProperty(key);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+}
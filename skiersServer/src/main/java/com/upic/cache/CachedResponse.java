@@ -0,0 +1,54 @@
+package com.upic.cache;
+
+/**
+ * A fully rendered GET response, kept so a cache hit can be written without touching Gson.
+ * The body is UTF-8 JSON and is shared between requests, so it must not be modified.
+ *
+ * The entity tag is fixed when the response is rendered. A gzip copy of the body is attached
+ * by the first request that needs one and reused by every later hit.
+ */
+public final class CachedResponse {
+  private final int status;
+  private final byte[] body;
+  private final String etag;
+  private volatile byte[] gzipBody;
+
+  public CachedResponse(int status, byte[] body) {
+    this(status, body, null);
+  }
+
+  public CachedResponse(int status, byte[] body, String etag) {
+    this.status = status;
+    this.body = body;
+    this.etag = etag;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public byte[] getBody() {
+    return body;
+  }
+
+  /**
+   * @return the quoted entity tag of the body, or null if it has none
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @return the gzip-encoded body, or null if it has not been compressed yet
+   */
+  public byte[] getGzipBody() {
+    return gzipBody;
+  }
+
+  /**
+   * Attach the gzip-encoded body. Two requests may race to do this; either copy is fine.
+   */
+  public void setGzipBody(byte[] gzipBody) {
+    this.gzipBody = gzipBody;
+  }
+}
@@ -0,0 +1,73 @@
+package com.upic.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Approximate per-key access counts (a count-min sketch) used to decide which cache entries
+ * are worth keeping. Counts are halved every {@code sampleSize} increments so that keys which
+ * were popular a while ago gradually lose their advantage.
+ */
+class FrequencySketch {
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+  private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+  private final AtomicIntegerArray table;
+  private final int mask;
+  private final long sampleSize;
+  private final AtomicLong additions = new AtomicLong();
+
+  FrequencySketch(int expectedEntries) {
+    int width = Integer.highestOneBit(Math.max(16, expectedEntries) * 4 - 1);
+    this.table = new AtomicIntegerArray(width * DEPTH);
+    this.mask = width - 1;
+    this.sampleSize = 10L * Math.max(16, expectedEntries);
+  }
+
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    for (int row = 0; row < DEPTH; row++) {
+      int index = indexOf(hash, row);
+      int count;
+      do {
+        count = table.get(index);
+        if (count >= MAX_COUNT) {
+          break;
+        }
+      } while (!table.compareAndSet(index, count, count + 1));
+    }
+    if (additions.incrementAndGet() % sampleSize == 0) {
+      reset();
+    }
+  }
+
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int min = MAX_COUNT;
+    for (int row = 0; row < DEPTH; row++) {
+      min = Math.min(min, table.get(indexOf(hash, row)));
+    }
+    return min;
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length(); i++) {
+      int count;
+      do {
+        count = table.get(i);
+      } while (!table.compareAndSet(i, count, count >>> 1));
+    }
+  }
+
+  private int indexOf(int hash, int row) {
+    int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+    return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+  }
+
+  private static int spread(int h) {
+    h ^= h >>> 16;
+    h *= 0x45D9F3B;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,263 @@
+package com.upic.cache;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, in-process read-through cache with per-entry TTLs.
+ *
+ * Every lookup is counted in a {@link FrequencySketch}. When the cache is full, the oldest
+ * entry is only evicted if the incoming key has been requested more often; otherwise the
+ * newcomer is not cached and the old entry gets a second chance. That keeps the skiers a
+ * dashboard polls over and over in the cache while one-off lookups pass straight through.
+ *
+ * Entries may be marked negative (e.g. "No records found") so they can be counted separately
+ * and given a shorter TTL by the caller.
+ *
+ * The eviction queue holds one node per insertion; a refresh keeps the entry's node. Nodes of
+ * entries that have since expired or been removed are skipped when polled, and pruned once the
+ * queue holds more than twice maxEntries nodes, so short TTLs cannot grow it without bound.
+ */
+public class ReadCache<K, V> {
+  private final int maxEntries;
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final Queue<Node<K>> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queuedNodes = new AtomicInteger();
+  private final FrequencySketch sketch;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder negativeHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+
+  public ReadCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.sketch = new FrequencySketch(maxEntries);
+  }
+
+  /**
+   * @return the cached value, or null on a miss or expired entry
+   */
+  public V get(K key) {
+    sketch.increment(key);
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    if (entry.isExpired(System.nanoTime())) {
+      if (entries.remove(key, entry)) {
+        expirations.increment();
+      }
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    if (entry.negative) {
+      negativeHits.increment();
+    }
+    return entry.value;
+  }
+
+  public void put(K key, V value, long ttlMs) {
+    put(key, value, ttlMs, false);
+  }
+
+  /**
+   * Cache a "nothing found" result for {@code ttlMs}.
+   */
+  public void putNegative(K key, V value, long ttlMs) {
+    put(key, value, ttlMs, true);
+  }
+
+  public void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public Stats stats() {
+    return new Stats(hits.sum(), negativeHits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+        rejections.sum(), entries.size());
+  }
+
+  private void put(K key, V value, long ttlMs, boolean negative) {
+    if (ttlMs <= 0 || maxEntries <= 0) {
+      return;
+    }
+    long expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    // refresh of an existing key keeps its place in the queue, size unchanged
+    if (entries.computeIfPresent(key, (k, old) -> new Entry<>(value, expiresAtNanos, negative, old.node)) != null) {
+      return;
+    }
+    if (entries.size() >= maxEntries && !makeRoomFor(key)) {
+      rejections.increment();
+      return;
+    }
+    Node<K> node = new Node<>(key);
+    Entry<V> entry = new Entry<>(value, expiresAtNanos, negative, node);
+    if (entries.putIfAbsent(key, entry) == null) {
+      enqueue(node);
+    } else {
+      // lost a race with another put; take its value but not a second node
+      entries.computeIfPresent(key, (k, old) -> new Entry<>(value, expiresAtNanos, negative, old.node));
+    }
+  }
+
+  private void enqueue(Node<K> node) {
+    insertionOrder.add(node);
+    if (queuedNodes.incrementAndGet() > 2L * maxEntries) {
+      prune();
+    }
+  }
+
+  /**
+   * Drop the nodes of entries that are gone.
+   */
+  private void prune() {
+    insertionOrder.removeIf(node -> {
+      if (isLive(node)) {
+        return false;
+      }
+      queuedNodes.decrementAndGet();
+      return true;
+    });
+  }
+
+  private boolean isLive(Node<K> node) {
+    Entry<V> entry = entries.get(node.key);
+    return entry != null && entry.node == node;
+  }
+
+  /**
+   * Evict the oldest entry if it is expired or less popular than {@code candidate}.
+   *
+   * @return false if the candidate should not be admitted
+   */
+  private boolean makeRoomFor(K candidate) {
+    long now = System.nanoTime();
+    int candidateFrequency = sketch.frequency(candidate);
+    // a few attempts, skipping nodes of entries that were already removed
+    int attempts = 0;
+    while (attempts < 4) {
+      Node<K> node = insertionOrder.poll();
+      if (node == null) {
+        return true;
+      }
+      queuedNodes.decrementAndGet();
+      K victim = node.key;
+      Entry<V> victimEntry = entries.get(victim);
+      if (victimEntry == null || victimEntry.node != node) {
+        continue;
+      }
+      attempts++;
+      if (victimEntry.isExpired(now)) {
+        if (entries.remove(victim, victimEntry)) {
+          expirations.increment();
+        }
+        return true;
+      }
+      if (candidateFrequency > sketch.frequency(victim)) {
+        if (entries.remove(victim, victimEntry)) {
+          evictions.increment();
+        }
+        return true;
+      }
+      enqueue(node); // second chance
+      return false;
+    }
+    return entries.size() < maxEntries;
+  }
+
+  private static final class Node<K> {
+    final K key;
+
+    Node(K key) {
+      this.key = key;
+    }
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    final long expiresAtNanos;
+    final boolean negative;
+    // this entry's place in the eviction queue
+    final Node<?> node;
+
+    Entry(V value, long expiresAtNanos, boolean negative, Node<?> node) {
+      this.value = value;
+      this.expiresAtNanos = expiresAtNanos;
+      this.negative = negative;
+      this.node = node;
+    }
+
+    boolean isExpired(long now) {
+      return now - expiresAtNanos >= 0;
+    }
+  }
+
+  /**
+   * Point-in-time counters for one cache.
+   */
+  public static final class Stats {
+    private final long hits;
+    private final long negativeHits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long rejections;
+    private final int size;
+
+    Stats(long hits, long negativeHits, long misses, long evictions, long expirations, long rejections, int size) {
+      this.hits = hits;
+      this.negativeHits = negativeHits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.expirations = expirations;
+      this.rejections = rejections;
+      this.size = size;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getNegativeHits() {
+      return negativeHits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public long getExpirations() {
+      return expirations;
+    }
+
+    public long getRejections() {
+      return rejections;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public double getHitRatio() {
+      long total = hits + misses;
+      return total == 0 ? 0.0 : (double) hits / total;
+    }
+  }
+}
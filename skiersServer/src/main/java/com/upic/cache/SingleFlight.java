@@ -0,0 +1,82 @@
+package com.upic.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses concurrent calls for the same key into one backend call.
+ *
+ * The first caller for a key runs the loader on its own thread; callers arriving while it
+ * is running wait for that result instead of starting their own. Once the call finishes the
+ * key is forgotten, so keeping the result around afterwards is up to the caller (see
+ * {@link ReadCache}).
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+
+  /**
+   * Run {@code loader} for {@code key}, or wait up to {@code timeoutMs} for the call that is
+   * already running.
+   *
+   * @throws TimeoutException if this caller waited longer than {@code timeoutMs}
+   * @throws Exception whatever the loader threw, for the caller that ran it and every waiter
+   */
+  public V execute(K key, Callable<V> loader, long timeoutMs) throws Exception {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+    if (existing != null) {
+      coalesced.increment();
+      return await(existing, timeoutMs);
+    }
+
+    calls.increment();
+    try {
+      V value = loader.call();
+      mine.complete(value);
+      return value;
+    } catch (Exception e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  /** Backend calls actually made. */
+  public long getCallCount() {
+    return calls.sum();
+  }
+
+  /** Callers that shared another caller's backend call. */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /** Waiters that gave up before the shared call finished. */
+  public long getTimeoutCount() {
+    return timeouts.sum();
+  }
+
+  private V await(CompletableFuture<V> future, long timeoutMs) throws Exception {
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      timeouts.increment();
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+}
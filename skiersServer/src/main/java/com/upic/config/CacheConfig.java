@@ -0,0 +1,61 @@
+package com.upic.config;
+
+import java.io.IOException;
+
+/**
+ * Read cache settings for the GET endpoints, loaded from cache.properties.
+ */
+public class CacheConfig {
+  private final boolean enabled;
+  private final int maxEntries;
+  private final long verticalTtlMs;
+  private final long skierDayTtlMs;
+  private final long negativeTtlMs;
+  private final long resortDayTtlMs;
+  private final long resortDayWaitTimeoutMs;
+
+  private CacheConfig(ConfigProperties props) {
+    this.enabled = props.getBoolean("cache.enabled", true);
+    this.maxEntries = props.getInt("cache.maxEntries", 50000);
+    this.verticalTtlMs = props.getLong("cache.vertical.ttlMs", 30000);
+    this.skierDayTtlMs = props.getLong("cache.skierDay.ttlMs", 10000);
+    this.negativeTtlMs = props.getLong("cache.negative.ttlMs", 5000);
+    this.resortDayTtlMs = props.getLong("cache.resortDay.ttlMs", 1000);
+    this.resortDayWaitTimeoutMs = props.getLong("cache.resortDay.waitTimeoutMs", 5000);
+  }
+
+  /**
+   * Load settings from cache.properties, applying system property / env overrides.
+   */
+  public static CacheConfig load() throws IOException {
+    return new CacheConfig(ConfigProperties.load("cache.properties"));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public long getVerticalTtlMs() {
+    return verticalTtlMs;
+  }
+
+  public long getSkierDayTtlMs() {
+    return skierDayTtlMs;
+  }
+
+  public long getNegativeTtlMs() {
+    return negativeTtlMs;
+  }
+
+  public long getResortDayTtlMs() {
+    return resortDayTtlMs;
+  }
+
+  public long getResortDayWaitTimeoutMs() {
+    return resortDayWaitTimeoutMs;
+  }
+}
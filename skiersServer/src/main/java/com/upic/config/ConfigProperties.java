@@ -0,0 +1,69 @@
+package com.upic.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Loads a classpath properties file and lets each deployment override individual keys.
+ *
+ * A key such as {@code dynamodb.endpoint} can be overridden either with the JVM system
+ * property of the same name ({@code -Ddynamodb.endpoint=...}) or with the environment
+ * variable {@code DYNAMODB_ENDPOINT}. System properties win over environment variables,
+ * which win over the bundled file.
+ */
+public final class ConfigProperties {
+  private final Properties props;
+
+  private ConfigProperties(Properties props) {
+    this.props = props;
+  }
+
+  /**
+   * Load the given resource from the classpath.
+   *
+   * @param resourceName name of the properties file, e.g. "dynamodb.properties"
+   * @throws IOException if the resource is missing or cannot be read
+   */
+  public static ConfigProperties load(String resourceName) throws IOException {
+    Properties props = new Properties();
+    try (InputStream in = ConfigProperties.class.getClassLoader().getResourceAsStream(resourceName)) {
+      if (in == null) {
+        throw new IOException("Could not find " + resourceName);
+      }
+      props.load(in);
+    }
+    return new ConfigProperties(props);
+  }
+
+  public String getString(String key, String defaultValue) {
+    String value = System.getProperty(key);
+    if (value == null) {
+      value = System.getenv(toEnvName(key));
+    }
+    if (value == null) {
+      value = props.getProperty(key);
+    }
+    return (value == null || value.isBlank()) ? defaultValue : value.trim();
+  }
+
+  public int getInt(String key, int defaultValue) {
+    String value = getString(key, null);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  public long getLong(String key, long defaultValue) {
+    String value = getString(key, null);
+    return value == null ? defaultValue : Long.parseLong(value);
+  }
+
+  public boolean getBoolean(String key, boolean defaultValue) {
+    String value = getString(key, null);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+
+  private static String toEnvName(String key) {
+    return key.replace('.', '_').toUpperCase(Locale.ROOT);
+  }
+}
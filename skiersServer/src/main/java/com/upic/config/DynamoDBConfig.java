@@ -0,0 +1,212 @@
+package com.upic.config;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+
+/**
+ * DynamoDB client settings for the read path, loaded from dynamodb.properties.
+ * One client built from this config is meant to be shared for the servlet's lifetime.
+ */
+public class DynamoDBConfig {
+  private final String region;
+  private final String endpoint;
+  private final String tableName;
+  private final String verticalTableName;
+  private final boolean verticalQueryFallback;
+  private final boolean verticalBackfillComplete;
+  private final String sketchTableName;
+  private final int maxConnections;
+  private final int connectionTimeoutMs;
+  private final int connectionAcquisitionTimeoutMs;
+  private final int socketTimeoutMs;
+  private final int apiCallTimeoutMs;
+  private final int apiCallAttemptTimeoutMs;
+  private final long verticalDeadlineMs;
+  private final long skierDayDeadlineMs;
+  private final long resortDayDeadlineMs;
+  private final long skierCountDeadlineMs;
+  private final boolean hedgeEnabled;
+  private final double hedgePercentile;
+  private final long hedgeMinDelayMs;
+  private final long hedgeMaxDelayMs;
+  private final long hedgeMinSamples;
+  private final double hedgeMaxRatio;
+  private final int hedgeBurst;
+  private final long hedgeWindowMs;
+
+  private DynamoDBConfig(ConfigProperties props) {
+    this.region = props.getString("dynamodb.region", "us-west-2");
+    this.endpoint = props.getString("dynamodb.endpoint", null);
+    this.tableName = props.getString("dynamodb.tableName", "LiftRides");
+    this.verticalTableName = props.getString("dynamodb.verticalTableName", "SkierVerticals");
+    this.verticalQueryFallback = props.getBoolean("dynamodb.vertical.queryFallback", true);
+    this.verticalBackfillComplete = props.getBoolean("dynamodb.vertical.backfillComplete", false);
+    this.sketchTableName = props.getString("dynamodb.sketchTableName", "ResortDaySketches");
+    this.maxConnections = props.getInt("dynamodb.maxConnections", 200);
+    this.connectionTimeoutMs = props.getInt("dynamodb.connectionTimeoutMs", 1000);
+    this.connectionAcquisitionTimeoutMs = props.getInt("dynamodb.connectionAcquisitionTimeoutMs", 2000);
+    this.socketTimeoutMs = props.getInt("dynamodb.socketTimeoutMs", 3000);
+    this.apiCallTimeoutMs = props.getInt("dynamodb.apiCallTimeoutMs", 5000);
+    this.apiCallAttemptTimeoutMs = props.getInt("dynamodb.apiCallAttemptTimeoutMs", 2000);
+    this.verticalDeadlineMs = props.getLong("dynamodb.deadline.verticalMs", 1000);
+    this.skierDayDeadlineMs = props.getLong("dynamodb.deadline.skierDayMs", 500);
+    this.resortDayDeadlineMs = props.getLong("dynamodb.deadline.resortDayMs", 4000);
+    this.skierCountDeadlineMs = props.getLong("dynamodb.deadline.skierCountMs", 500);
+    this.hedgeEnabled = props.getBoolean("dynamodb.hedge.enabled", true);
+    this.hedgePercentile = Double.parseDouble(props.getString("dynamodb.hedge.percentile", "95"));
+    this.hedgeMinDelayMs = props.getLong("dynamodb.hedge.minDelayMs", 5);
+    this.hedgeMaxDelayMs = props.getLong("dynamodb.hedge.maxDelayMs", 200);
+    this.hedgeMinSamples = props.getLong("dynamodb.hedge.minSamples", 100);
+    this.hedgeMaxRatio = Double.parseDouble(props.getString("dynamodb.hedge.maxRatio", "0.1"));
+    this.hedgeBurst = props.getInt("dynamodb.hedge.burst", 10);
+    this.hedgeWindowMs = props.getLong("dynamodb.hedge.windowMs", 10000);
+  }
+
+  /**
+   * Load settings from dynamodb.properties, applying system property / env overrides.
+   */
+  public static DynamoDBConfig load() throws IOException {
+    return new DynamoDBConfig(ConfigProperties.load("dynamodb.properties"));
+  }
+
+  /**
+   * Build an async (Netty) client with a bounded, reusable connection pool. Request threads
+   * are not parked inside the SDK while DynamoDB answers.
+   */
+  public DynamoDbAsyncClient buildAsyncClient() {
+    DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+        .region(Region.of(region))
+        .credentialsProvider(DefaultCredentialsProvider.create())
+        .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+            .maxConcurrency(maxConnections)
+            .connectionTimeout(Duration.ofMillis(connectionTimeoutMs))
+            .connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquisitionTimeoutMs))
+            .readTimeout(Duration.ofMillis(socketTimeoutMs))
+            .tcpKeepAlive(true))
+        .overrideConfiguration(ClientOverrideConfiguration.builder()
+            .apiCallTimeout(Duration.ofMillis(apiCallTimeoutMs))
+            .apiCallAttemptTimeout(Duration.ofMillis(apiCallAttemptTimeoutMs))
+            .build());
+
+    // Point at DynamoDB Local (or any other endpoint) when configured
+    if (endpoint != null) {
+      builder.endpointOverride(URI.create(endpoint));
+    }
+    return builder.build();
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * Table of per-skier vertical totals kept up to date by the consumer.
+   */
+  public String getVerticalTableName() {
+    return verticalTableName;
+  }
+
+  /**
+   * Whether a skier without a complete totals item is summed from the ride items instead.
+   */
+  public boolean isVerticalQueryFallback() {
+    return verticalQueryFallback;
+  }
+
+  /**
+   * Whether the consumer's VerticalBackfill has run, so every totals item is complete, not just
+   * the ones it marked.
+   */
+  public boolean isVerticalBackfillComplete() {
+    return verticalBackfillComplete;
+  }
+
+  /**
+   * Table of unique-skier HyperLogLog sketches per resort day, written by the consumers.
+   */
+  public String getSketchTableName() {
+    return sketchTableName;
+  }
+
+  /**
+   * Time budget for GET /skiers/{skierID}/vertical, across all pages.
+   */
+  public long getVerticalDeadlineMs() {
+    return verticalDeadlineMs;
+  }
+
+  /**
+   * Time budget for GET /skiers/{r}/seasons/{s}/days/{d}/skiers/{skierID}.
+   */
+  public long getSkierDayDeadlineMs() {
+    return skierDayDeadlineMs;
+  }
+
+  /**
+   * Time budget for GET /resorts/{r}/seasons/{s}/day/{d}/skiers, whole day or one page.
+   */
+  public long getResortDayDeadlineMs() {
+    return resortDayDeadlineMs;
+  }
+
+  /**
+   * Time budget for GET /resorts/{r}/seasons/{s}/day/{d}/skiers/count.
+   */
+  public long getSkierCountDeadlineMs() {
+    return skierCountDeadlineMs;
+  }
+
+  public boolean isHedgeEnabled() {
+    return hedgeEnabled;
+  }
+
+  /**
+   * Latency percentile of a query after which a second copy is sent.
+   */
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public long getHedgeMinDelayMs() {
+    return hedgeMinDelayMs;
+  }
+
+  /**
+   * Hedge delay used until enough samples exist, and the upper bound afterwards.
+   */
+  public long getHedgeMaxDelayMs() {
+    return hedgeMaxDelayMs;
+  }
+
+  public long getHedgeMinSamples() {
+    return hedgeMinSamples;
+  }
+
+  /**
+   * Upper bound on hedges as a fraction of all queries.
+   */
+  public double getHedgeMaxRatio() {
+    return hedgeMaxRatio;
+  }
+
+  /**
+   * Most hedges that unused budget can add up to.
+   */
+  public int getHedgeBurst() {
+    return hedgeBurst;
+  }
+
+  /**
+   * Length of one latency window; the hedge delay comes from the last one or two windows.
+   */
+  public long getHedgeWindowMs() {
+    return hedgeWindowMs;
+  }
+}
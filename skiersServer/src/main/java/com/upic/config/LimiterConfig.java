@@ -0,0 +1,53 @@
+package com.upic.config;
+
+import com.upic.limit.AdaptiveLimiter;
+import java.io.IOException;
+
+/**
+ * Adaptive concurrency limits for SkierServlet, loaded from limits.properties.
+ * Reads (GET), single-ride writes (POST) and batch uploads get separate limiters built from the
+ * "read.", "write." and "batch." keys.
+ */
+public class LimiterConfig {
+  private final ConfigProperties props;
+  private final boolean enabled;
+  private final int retryAfterSeconds;
+
+  private LimiterConfig(ConfigProperties props) {
+    this.props = props;
+    this.enabled = props.getBoolean("limit.enabled", true);
+    this.retryAfterSeconds = props.getInt("limit.retryAfterSeconds", 1);
+  }
+
+  /**
+   * Load settings from limits.properties, applying system property / env overrides.
+   */
+  public static LimiterConfig load() throws IOException {
+    return new LimiterConfig(ConfigProperties.load("limits.properties"));
+  }
+
+  /**
+   * Build the limiter for one kind of request.
+   *
+   * @param kind "read", "write" or "batch"; windowMs and minWindowSamples may be set per kind
+   */
+  public AdaptiveLimiter buildLimiter(String kind) {
+    String prefix = "limit." + kind + ".";
+    return new AdaptiveLimiter(kind,
+        props.getInt(prefix + "initialLimit", 100),
+        props.getInt(prefix + "minLimit", 10),
+        props.getInt(prefix + "maxLimit", 1000),
+        Double.parseDouble(props.getString(prefix + "tolerance", "1.5")),
+        Double.parseDouble(props.getString("limit.smoothing", "0.2")),
+        props.getLong(prefix + "windowMs", props.getLong("limit.windowMs", 100)),
+        props.getInt(prefix + "minWindowSamples", props.getInt("limit.minWindowSamples", 10)));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
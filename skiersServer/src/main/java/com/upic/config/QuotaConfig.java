@@ -0,0 +1,53 @@
+package com.upic.config;
+
+import com.upic.limit.ResortQuotas;
+import java.io.IOException;
+
+/**
+ * Per-resort admission quotas, loaded from quota.properties.
+ *
+ * {@code quota.<kind>.ratePerSecond} / {@code quota.<kind>.burst} apply to every resort and
+ * {@code quota.<kind>.resort.<resortID>.ratePerSecond} / {@code .burst} override them for one.
+ */
+public class QuotaConfig {
+  private final ConfigProperties props;
+  private final boolean enabled;
+
+  private QuotaConfig(ConfigProperties props) {
+    this.props = props;
+    this.enabled = props.getBoolean("quota.enabled", true);
+  }
+
+  /**
+   * Load settings from quota.properties, applying system property / env overrides.
+   */
+  public static QuotaConfig load() throws IOException {
+    return new QuotaConfig(ConfigProperties.load("quota.properties"));
+  }
+
+  /**
+   * Build the quotas for one kind of request.
+   *
+   * @param kind "ingest" or "query"
+   * @param maxResortID highest valid resortID
+   */
+  public ResortQuotas buildQuotas(String kind, int maxResortID) {
+    String prefix = "quota." + kind + ".";
+    double defaultRate = Double.parseDouble(props.getString(prefix + "ratePerSecond", "0"));
+    int defaultBurst = props.getInt(prefix + "burst", 1);
+
+    double[] rates = new double[maxResortID + 1];
+    int[] bursts = new int[maxResortID + 1];
+    for (int resortID = 0; resortID <= maxResortID; resortID++) {
+      String resortPrefix = prefix + "resort." + resortID + ".";
+      rates[resortID] = Double.parseDouble(props.getString(resortPrefix + "ratePerSecond",
+          String.valueOf(defaultRate)));
+      bursts[resortID] = props.getInt(resortPrefix + "burst", defaultBurst);
+    }
+    return new ResortQuotas(kind, maxResortID, rates, bursts);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+}
@@ -0,0 +1,109 @@
+package com.upic.config;
+
+import com.rabbitmq.client.ConnectionFactory;
+import java.io.IOException;
+
+/**
+ * RabbitMQ producer settings, loaded from rabbitmq.properties.
+ */
+public class RabbitMQConfig {
+  private final String host;
+  private final int port;
+  private final String username;
+  private final String password;
+  private final String queueName;
+  private final int connections;
+  private final int maxChannels;
+  private final int minIdleChannels;
+  private final long borrowTimeoutMs;
+  private final int connectionTimeoutMs;
+  private final long reconnectBackoffMs;
+  private final boolean confirmsEnabled;
+  private final int confirmWindow;
+  private final long confirmTimeoutMs;
+  private final boolean binaryFormat;
+
+  private RabbitMQConfig(ConfigProperties props) {
+    this.host = props.getString("rabbitmq.host", "localhost");
+    this.port = props.getInt("rabbitmq.port", ConnectionFactory.DEFAULT_AMQP_PORT);
+    this.username = props.getString("rabbitmq.username", "guest");
+    this.password = props.getString("rabbitmq.password", "guest");
+    this.queueName = props.getString("rabbitmq.queueName", "lift_ride_queue");
+    this.connections = props.getInt("rabbitmq.connections", 2);
+    this.maxChannels = props.getInt("rabbitmq.pool.maxChannels", 64);
+    this.minIdleChannels = props.getInt("rabbitmq.pool.minIdleChannels", 4);
+    this.borrowTimeoutMs = props.getLong("rabbitmq.pool.borrowTimeoutMs", 1000);
+    this.connectionTimeoutMs = props.getInt("rabbitmq.connectionTimeoutMs", 1000);
+    this.reconnectBackoffMs = props.getLong("rabbitmq.reconnectBackoffMs", 1000);
+    this.confirmsEnabled = props.getBoolean("rabbitmq.confirms.enabled", true);
+    this.confirmWindow = props.getInt("rabbitmq.confirms.window", 256);
+    this.confirmTimeoutMs = props.getLong("rabbitmq.confirms.timeoutMs", 5000);
+    this.binaryFormat = "binary".equalsIgnoreCase(props.getString("rabbitmq.messageFormat", "json"));
+  }
+
+  /**
+   * Load settings from rabbitmq.properties, applying system property / env overrides.
+   */
+  public static RabbitMQConfig load() throws IOException {
+    return new RabbitMQConfig(ConfigProperties.load("rabbitmq.properties"));
+  }
+
+  public ConnectionFactory buildConnectionFactory() {
+    ConnectionFactory factory = new ConnectionFactory();
+    factory.setHost(host);
+    factory.setPort(port);
+    factory.setUsername(username);
+    factory.setPassword(password);
+    // an unreachable broker must fail fast, not after the client's 60 s default
+    factory.setConnectionTimeout(connectionTimeoutMs);
+    factory.setHandshakeTimeout(connectionTimeoutMs);
+    factory.setAutomaticRecoveryEnabled(true);
+    return factory;
+  }
+
+  public String getQueueName() {
+    return queueName;
+  }
+
+  public int getConnections() {
+    return connections;
+  }
+
+  public int getMaxChannels() {
+    return maxChannels;
+  }
+
+  public int getMinIdleChannels() {
+    return minIdleChannels;
+  }
+
+  public long getBorrowTimeoutMs() {
+    return borrowTimeoutMs;
+  }
+
+  /**
+   * How long after a failed connection attempt new connections fail immediately.
+   */
+  public long getReconnectBackoffMs() {
+    return reconnectBackoffMs;
+  }
+
+  public boolean isConfirmsEnabled() {
+    return confirmsEnabled;
+  }
+
+  public int getConfirmWindow() {
+    return confirmWindow;
+  }
+
+  public long getConfirmTimeoutMs() {
+    return confirmTimeoutMs;
+  }
+
+  /**
+   * Whether messages are published in the fixed-width binary format instead of JSON.
+   */
+  public boolean isBinaryFormat() {
+    return binaryFormat;
+  }
+}
@@ -0,0 +1,74 @@
+package com.upic.config;
+
+import com.upic.spool.FsyncPolicy;
+import com.upic.spool.IngestSpool;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Settings for the local ingest spool, loaded from spool.properties.
+ */
+public class SpoolConfig {
+  private final boolean enabled;
+  private final String directory;
+  private final int segmentBytes;
+  private final long maxBytes;
+  private final FsyncPolicy fsyncPolicy;
+  private final long fsyncIntervalMs;
+  private final long publishTimeoutMs;
+  private final int replayBatchSize;
+  private final long replayIntervalMs;
+
+  private SpoolConfig(ConfigProperties props) {
+    this.enabled = props.getBoolean("spool.enabled", true);
+    this.directory = props.getString("spool.directory",
+        Paths.get(System.getProperty("java.io.tmpdir"), "skiers-spool").toString());
+    this.segmentBytes = props.getInt("spool.segmentBytes", 64 * 1024 * 1024);
+    this.maxBytes = props.getLong("spool.maxBytes", 1024L * 1024 * 1024);
+    this.fsyncPolicy = FsyncPolicy.valueOf(props.getString("spool.fsync", "interval").toUpperCase(Locale.ROOT));
+    this.fsyncIntervalMs = props.getLong("spool.fsyncIntervalMs", 1000);
+    this.publishTimeoutMs = props.getLong("spool.publishTimeoutMs", 200);
+    this.replayBatchSize = props.getInt("spool.replayBatchSize", 500);
+    this.replayIntervalMs = props.getLong("spool.replayIntervalMs", 1000);
+  }
+
+  /**
+   * Load settings from spool.properties, applying system property / env overrides.
+   */
+  public static SpoolConfig load() throws IOException {
+    return new SpoolConfig(ConfigProperties.load("spool.properties"));
+  }
+
+  /**
+   * Open the spool directory, recovering anything left from a previous run.
+   */
+  public IngestSpool openSpool() throws IOException {
+    Path path = Paths.get(directory);
+    return new IngestSpool(path, segmentBytes, maxBytes, fsyncPolicy);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public long getPublishTimeoutMs() {
+    return publishTimeoutMs;
+  }
+
+  public int getReplayBatchSize() {
+    return replayBatchSize;
+  }
+
+  public long getReplayIntervalMs() {
+    return replayIntervalMs;
+  }
+
+  /**
+   * How often the replayer forces the active segment to disk; 0 unless the policy is INTERVAL.
+   */
+  public long getFsyncIntervalMs() {
+    return fsyncPolicy == FsyncPolicy.INTERVAL ? fsyncIntervalMs : 0;
+  }
+}
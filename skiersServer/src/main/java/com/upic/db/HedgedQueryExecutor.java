@@ -0,0 +1,246 @@
+package com.upic.db;
+
+import com.upic.metrics.LatencyHistogram;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+/**
+ * Runs one kind of DynamoDB query with a deadline and an optional hedge.
+ *
+ * If the first attempt has not answered after the hedge delay, the same request is sent a
+ * second time and whichever answers first wins; the other is cancelled, which aborts its HTTP
+ * request. The delay tracks a percentile of this query's own recent latency (so only the slow
+ * tail is hedged): samples go into the current window's histogram, and the percentile is taken
+ * over it and the previous window. Hedges draw on a budget that each query tops up by the
+ * hedge ratio and that holds at most a small burst, so a slow table does not see its load
+ * doubled, not even after a long calm spell. Nothing blocks while waiting: attempts run on the async client's event loop and
+ * the timers on a shared scheduler.
+ */
+public class HedgedQueryExecutor {
+  // recomputing the percentile walks the histogram, so do it at most this often
+  private static final long THRESHOLD_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // hedge budget is kept in thousandths of a hedge
+  private static final long CREDIT_PER_HEDGE = 1000;
+
+  private final String name;
+  private final DynamoDbAsyncClient client;
+  private final ScheduledExecutorService scheduler;
+  private final boolean hedgingEnabled;
+  private final double hedgePercentile;
+  private final long minDelayNanos;
+  private final long maxDelayNanos;
+  private final long minSamples;
+  private final long creditPerQuery;
+  private final long maxCredit;
+  private final long windowNanos;
+
+  // latency of the current and the previous window; swapped when the delay is refreshed
+  private volatile LatencyHistogram latency = new LatencyHistogram();
+  private volatile LatencyHistogram previousLatency = new LatencyHistogram();
+  private long windowStart = System.nanoTime(); // guarded by this
+  private final AtomicLong hedgeCredit = new AtomicLong();
+  private final LongAdder queries = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder hedgeWins = new LongAdder();
+  private final LongAdder deadlineMisses = new LongAdder();
+
+  private volatile long hedgeDelayNanos;
+  private volatile long hedgeDelayComputedAt;
+
+  public HedgedQueryExecutor(String name, DynamoDbAsyncClient client, ScheduledExecutorService scheduler,
+      boolean hedgingEnabled, double hedgePercentile, long minDelayMs, long maxDelayMs, long minSamples,
+      double maxHedgeRatio, int hedgeBurst, long windowMs) {
+    this.name = name;
+    this.client = client;
+    this.scheduler = scheduler;
+    this.hedgingEnabled = hedgingEnabled;
+    this.hedgePercentile = hedgePercentile;
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+    this.minSamples = minSamples;
+    this.creditPerQuery = Math.round(maxHedgeRatio * CREDIT_PER_HEDGE);
+    this.maxCredit = Math.max(1, hedgeBurst) * CREDIT_PER_HEDGE;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    this.hedgeDelayNanos = maxDelayNanos;
+    this.hedgeDelayComputedAt = System.nanoTime();
+  }
+
+  /**
+   * Send {@code request}, hedging it if needed.
+   *
+   * @param deadlineNanos {@link System#nanoTime()} by which the query must have answered
+   * @return completes with the first successful response, or exceptionally with
+   *     {@link QueryDeadlineException} or the SDK error
+   */
+  public CompletableFuture<QueryResponse> query(QueryRequest request, long deadlineNanos) {
+    CompletableFuture<QueryResponse> result = new CompletableFuture<>();
+    long startNanos = System.nanoTime();
+    long remainingNanos = deadlineNanos - startNanos;
+    if (remainingNanos <= 0) {
+      deadlineMisses.increment();
+      result.completeExceptionally(new QueryDeadlineException(name + " query deadline exceeded"));
+      return result;
+    }
+    queries.increment();
+    hedgeCredit.accumulateAndGet(creditPerQuery, (credit, earned) -> Math.min(maxCredit, credit + earned));
+
+    CompletableFuture<QueryResponse> primary = client.query(request);
+    Attempts attempts = new Attempts(primary);
+    primary.whenComplete((response, error) -> {
+      // every primary counts, also one cancelled after losing to a hedge or the deadline: its
+      // time so far is a lower bound, and leaving it out would hide exactly the slow tail
+      latency.recordNanos(System.nanoTime() - startNanos);
+      onAttemptDone(result, attempts, false, response, error);
+    });
+
+    Future<?> deadlineTimer = scheduler.schedule(() -> {
+      if (result.completeExceptionally(new QueryDeadlineException(name + " query deadline exceeded"))) {
+        deadlineMisses.increment();
+      }
+    }, remainingNanos, TimeUnit.NANOSECONDS);
+
+    long delayNanos = hedgeDelayNanos();
+    Future<?> hedgeTimer = null;
+    if (hedgingEnabled && delayNanos < remainingNanos) {
+      hedgeTimer = scheduler.schedule(() -> {
+        if (result.isDone() || !hedgeAllowed()) {
+          return;
+        }
+        hedges.increment();
+        CompletableFuture<QueryResponse> hedge = client.query(request);
+        attempts.hedge = hedge;
+        hedge.whenComplete((response, error) -> onAttemptDone(result, attempts, true, response, error));
+        // the result may have completed while the hedge was being sent
+        if (result.isDone()) {
+          hedge.cancel(true);
+        }
+      }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    Future<?> hedgeTimerRef = hedgeTimer;
+    result.whenComplete((response, error) -> {
+      deadlineTimer.cancel(false);
+      if (hedgeTimerRef != null) {
+        hedgeTimerRef.cancel(false);
+      }
+      attempts.cancelAll();
+    });
+    return result;
+  }
+
+  private void onAttemptDone(CompletableFuture<QueryResponse> result, Attempts attempts, boolean isHedge,
+      QueryResponse response, Throwable error) {
+    if (error == null) {
+      if (result.complete(response) && isHedge) {
+        hedgeWins.increment();
+      }
+      return;
+    }
+    // one failed attempt is not fatal while the other one can still answer
+    CompletableFuture<QueryResponse> other = isHedge ? attempts.primary : attempts.hedge;
+    boolean otherPending = other != null && !other.isDone();
+    if (!otherPending || attempts.failed.getAndSet(true)) {
+      result.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * Take one hedge from the budget, if there is one.
+   */
+  private boolean hedgeAllowed() {
+    while (true) {
+      long credit = hedgeCredit.get();
+      if (credit < CREDIT_PER_HEDGE) {
+        return false;
+      }
+      if (hedgeCredit.compareAndSet(credit, credit - CREDIT_PER_HEDGE)) {
+        return true;
+      }
+    }
+  }
+
+  private long hedgeDelayNanos() {
+    long now = System.nanoTime();
+    if (now - hedgeDelayComputedAt < THRESHOLD_REFRESH_NANOS) {
+      return hedgeDelayNanos;
+    }
+    synchronized (this) {
+      if (now - hedgeDelayComputedAt < THRESHOLD_REFRESH_NANOS) {
+        return hedgeDelayNanos;
+      }
+      if (now - windowStart >= windowNanos) {
+        previousLatency = latency;
+        latency = new LatencyHistogram();
+        windowStart = now;
+      }
+      LatencyHistogram current = latency;
+      LatencyHistogram previous = previousLatency;
+      long delay = maxDelayNanos;
+      if (current.getCount() + previous.getCount() >= minSamples) {
+        long percentileNanos = TimeUnit.MICROSECONDS.toNanos(
+            LatencyHistogram.valueAtPercentileMicros(hedgePercentile, current, previous));
+        delay = Math.max(minDelayNanos, Math.min(maxDelayNanos, percentileNanos));
+      }
+      hedgeDelayNanos = delay;
+      hedgeDelayComputedAt = now;
+      return delay;
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getQueryCount() {
+    return queries.sum();
+  }
+
+  public long getHedgeCount() {
+    return hedges.sum();
+  }
+
+  public long getHedgeWinCount() {
+    return hedgeWins.sum();
+  }
+
+  public long getDeadlineMissCount() {
+    return deadlineMisses.sum();
+  }
+
+  /**
+   * Current hedge delay in milliseconds, as used for the next query.
+   */
+  public long getHedgeDelayMs() {
+    return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos);
+  }
+
+  /**
+   * The in-flight attempts of one query.
+   */
+  private static final class Attempts {
+    final CompletableFuture<QueryResponse> primary;
+    volatile CompletableFuture<QueryResponse> hedge;
+    final AtomicBoolean failed = new AtomicBoolean();
+
+    Attempts(CompletableFuture<QueryResponse> primary) {
+      this.primary = primary;
+    }
+
+    void cancelAll() {
+      // cancelling an SDK future aborts the underlying HTTP request
+      primary.cancel(true);
+      CompletableFuture<QueryResponse> h = hedge;
+      if (h != null) {
+        h.cancel(true);
+      }
+    }
+  }
+}
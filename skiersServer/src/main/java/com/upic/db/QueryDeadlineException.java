@@ -0,0 +1,11 @@
+package com.upic.db;
+
+/**
+ * Thrown when a read does not finish within its endpoint's deadline. Any DynamoDB calls still
+ * in flight have been cancelled by the time this is seen.
+ */
+public class QueryDeadlineException extends RuntimeException {
+  public QueryDeadlineException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,518 @@
+package com.upic.db;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.upic.config.DynamoDBConfig;
+import com.upic.model.LiftRideRecord;
+import com.upic.sketch.HyperLogLog;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+/**
+ * Read-side access to the LiftRides table for the GET endpoints.
+ *
+ * One instance (and therefore one DynamoDB client with its connection pool) is created in
+ * {@code SkierServlet.init()} and closed in {@code destroy()}. All queries follow
+ * {@code LastEvaluatedKey} until the result is exhausted and project only the attributes
+ * the endpoints actually return.
+ *
+ * Every page goes through a {@link HedgedQueryExecutor} on the async client, and each read as
+ * a whole is bounded by its endpoint's deadline: a read that runs out of time fails with
+ * {@link QueryDeadlineException} and its outstanding calls are cancelled.
+ */
+public class SkierReadRepository implements AutoCloseable {
+  private static final String SKIER_DAY_INDEX = "resort-season-day-skier-index";
+  private static final String RESORT_DATE_INDEX = "resortDateIndex";
+
+  // "time" is a DynamoDB reserved word, so every projected attribute goes through a name alias
+  private static final Map<String, String> RIDE_ATTRIBUTE_NAMES = Map.of(
+      "#sk", "skierID",
+      "#t", "time",
+      "#l", "liftID",
+      "#v", "vertical");
+  private static final String RIDE_PROJECTION = "#sk, #t, #l, #v";
+
+  private static final Gson CURSOR_GSON = new Gson();
+  private static final Type CURSOR_TYPE = new TypeToken<Map<String, Map<String, String>>>() { }.getType();
+
+  /**
+   * Receives rides one at a time, so callers can aggregate without a record object per item.
+   */
+  public interface RideVisitor {
+    void visit(int skierID, int time, int liftID, int vertical);
+  }
+
+  private final DynamoDbAsyncClient dynamoDbClient;
+  private final String tableName;
+  private final String verticalTableName;
+  private final boolean verticalQueryFallback;
+  private final boolean verticalBackfillComplete;
+  private final String sketchTableName;
+  private final ScheduledThreadPoolExecutor timers;
+  private final HedgedQueryExecutor verticalQueries;
+  private final HedgedQueryExecutor skierDayQueries;
+  private final HedgedQueryExecutor resortDayQueries;
+  private final HedgedQueryExecutor skierCountQueries;
+  private final long verticalDeadlineNanos;
+  private final long skierDayDeadlineNanos;
+  private final long resortDayDeadlineNanos;
+  private final long skierCountDeadlineNanos;
+
+  public SkierReadRepository(DynamoDBConfig config) {
+    this.dynamoDbClient = config.buildAsyncClient();
+    this.tableName = config.getTableName();
+    this.verticalTableName = config.getVerticalTableName();
+    this.verticalQueryFallback = config.isVerticalQueryFallback();
+    this.verticalBackfillComplete = config.isVerticalBackfillComplete();
+    this.sketchTableName = config.getSketchTableName();
+
+    // hedge and deadline timers only complete futures, so one thread is plenty
+    this.timers = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "dynamodb-read-timers");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.timers.setRemoveOnCancelPolicy(true);
+    this.verticalQueries = newExecutor("vertical", config);
+    this.skierDayQueries = newExecutor("skier_day", config);
+    this.resortDayQueries = newExecutor("resort_day", config);
+    this.skierCountQueries = newExecutor("skier_count", config);
+    this.verticalDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getVerticalDeadlineMs());
+    this.skierDayDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getSkierDayDeadlineMs());
+    this.resortDayDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getResortDayDeadlineMs());
+    this.skierCountDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getSkierCountDeadlineMs());
+  }
+
+  private HedgedQueryExecutor newExecutor(String name, DynamoDBConfig config) {
+    return new HedgedQueryExecutor(name, dynamoDbClient, timers, config.isHedgeEnabled(),
+        config.getHedgePercentile(), config.getHedgeMinDelayMs(), config.getHedgeMaxDelayMs(),
+        config.getHedgeMinSamples(), config.getHedgeMaxRatio(), config.getHedgeBurst(),
+        config.getHedgeWindowMs());
+  }
+
+  /**
+   * The per-query executors, for exporting hedge and deadline counters.
+   */
+  public List<HedgedQueryExecutor> getQueryExecutors() {
+    return List.of(verticalQueries, skierDayQueries, resortDayQueries, skierCountQueries);
+  }
+
+  /**
+   * A skier's total vertical for the given season.
+   *
+   * Read with one GetItem from the totals the consumer maintains, so the cost does not grow
+   * with the number of rides. A totals item misses the rides written before the consumer kept
+   * totals until the backfill has added them, so an item that is not marked backfilled (and
+   * a missing item) is summed from the ride items when the fallback is enabled.
+   */
+  public int getTotalVertical(int skierID, String seasonID) {
+    long deadlineNanos = System.nanoTime() + verticalDeadlineNanos;
+    GetItemRequest request = GetItemRequest.builder()
+        .tableName(verticalTableName)
+        .key(Map.of(
+            "skierID", AttributeValue.builder().n(String.valueOf(skierID)).build(),
+            "totalKey", AttributeValue.builder().s(seasonID).build()))
+        .projectionExpression("totalVertical, backfilled")
+        .build();
+    GetItemResponse response = await(withDeadline(dynamoDbClient.getItem(request), deadlineNanos, "vertical"));
+    boolean found = response.hasItem() && !response.item().isEmpty();
+    if (found && (verticalBackfillComplete || response.item().containsKey("backfilled") || !verticalQueryFallback)) {
+      return getInt(response.item(), "totalVertical");
+    }
+    return verticalQueryFallback ? sumVertical(skierID, seasonID, deadlineNanos) : 0;
+  }
+
+  /**
+   * Sum the vertical of every ride a skier took in the given season.
+   */
+  private int sumVertical(int skierID, String seasonID, long deadlineNanos) {
+    QueryRequest.Builder request = QueryRequest.builder()
+        .tableName(tableName)
+        .keyConditionExpression("skierID = :skierID AND begins_with(dateKey, :prefix)")
+        .projectionExpression("#v")
+        .expressionAttributeNames(Map.of("#v", "vertical"))
+        .expressionAttributeValues(Map.of(
+            ":skierID", AttributeValue.builder().n(String.valueOf(skierID)).build(),
+            ":prefix", AttributeValue.builder().s(seasonID + "_").build()
+        ));
+
+    int[] totalVertical = new int[1];
+    await(readPages(verticalQueries, request, null, Integer.MAX_VALUE, deadlineNanos,
+        page -> {
+          for (Map<String, AttributeValue> item : page.items()) {
+            totalVertical[0] += getInt(item, "vertical");
+          }
+        }));
+    return totalVertical[0];
+  }
+
+  /**
+   * All rides for one skier on one resort day, via the seasonDaySkier GSI.
+   */
+  public List<LiftRideRecord> getSkierDayRides(int resortID, String seasonID, String dayID, int skierID) {
+    QueryRequest.Builder request = QueryRequest.builder()
+        .tableName(tableName)
+        .indexName(SKIER_DAY_INDEX)
+        .keyConditionExpression("resortID = :resortID AND seasonDaySkier = :sdsk")
+        .projectionExpression(RIDE_PROJECTION)
+        .expressionAttributeNames(RIDE_ATTRIBUTE_NAMES)
+        .expressionAttributeValues(Map.of(
+            ":resortID", AttributeValue.builder().n(String.valueOf(resortID)).build(),
+            ":sdsk", AttributeValue.builder().s(seasonID + "_" + dayID + "_" + skierID).build()
+        ));
+    return queryRides(skierDayQueries, request, skierDayDeadlineNanos);
+  }
+
+  /**
+   * All rides at a resort on one day, via the resortDateIndex GSI.
+   */
+  public List<LiftRideRecord> getResortDayRides(int resortID, String seasonID, String dayID) {
+    List<LiftRideRecord> rides = new ArrayList<>();
+    forEachResortDayRide(resortID, seasonID, dayID,
+        (skierID, time, liftID, vertical) -> rides.add(new LiftRideRecord(skierID, time, liftID, vertical)));
+    return rides;
+  }
+
+  /**
+   * Stream every ride at a resort on one day to {@code visitor}.
+   *
+   * All dateKey shards are queried at once, so the read takes as long as the slowest shard
+   * rather than all of them in turn. Each shard is buffered while it is read and the buffers
+   * are replayed in shard order, which keeps the order rides reach {@code visitor} stable.
+   */
+  public void forEachResortDayRide(int resortID, String seasonID, String dayID, RideVisitor visitor) {
+    long deadlineNanos = System.nanoTime() + resortDayDeadlineNanos;
+    RideBuffer[] shards = new RideBuffer[DateKeys.SHARD_COUNT];
+    CompletableFuture<?>[] reads = new CompletableFuture<?>[DateKeys.SHARD_COUNT];
+    for (int shard = 0; shard < DateKeys.SHARD_COUNT; shard++) {
+      RideBuffer buffer = new RideBuffer();
+      shards[shard] = buffer;
+      reads[shard] = readPages(resortDayQueries, resortDayRequest(resortID, seasonID, dayID, shard), null,
+          Integer.MAX_VALUE, deadlineNanos, page -> visitRides(page, buffer));
+    }
+    await(CompletableFuture.allOf(reads));
+    for (RideBuffer buffer : shards) {
+      buffer.replay(visitor);
+    }
+  }
+
+  /**
+   * Stream at most {@code limit} rides at a resort on one day to {@code visitor}, starting
+   * after {@code startKey}.
+   *
+   * Pages walk the dateKey shards in order: the returned key names the shard to carry on in,
+   * and when a page ends exactly on a shard boundary it holds only the next shard's dateKey.
+   *
+   * @param startKey key returned by the previous call, or null for the first page
+   * @return the key to continue from, or null when the day has been read completely
+   * @throws IllegalArgumentException if {@code startKey} is not a key of this resort day
+   */
+  public Map<String, AttributeValue> visitResortDayPage(int resortID, String seasonID, String dayID,
+      Map<String, AttributeValue> startKey, int limit, RideVisitor visitor) {
+    int shard = 0;
+    Map<String, AttributeValue> shardStartKey = null;
+    if (startKey != null) {
+      shard = startShard(resortID, seasonID, dayID, startKey);
+      // a bare dateKey means "from the start of that shard"
+      shardStartKey = startKey.size() > 1 ? startKey : null;
+    }
+    return await(readShardPages(resortID, seasonID, dayID, shard, shardStartKey, limit,
+        System.nanoTime() + resortDayDeadlineNanos, visitor));
+  }
+
+  /**
+   * The shard a resort-day page key continues in. Only keys this resort day can produce are
+   * accepted: a bare dateKey, or the index key (resortID, dateKey, skierID) with this resortID.
+   * Anything else, e.g. a cursor from another day, would reach DynamoDB as a bad
+   * ExclusiveStartKey.
+   *
+   * @throws IllegalArgumentException if the key does not belong to this resort day
+   */
+  private static int startShard(int resortID, String seasonID, String dayID, Map<String, AttributeValue> startKey) {
+    AttributeValue dateKey = startKey.get("dateKey");
+    int shard = DateKeys.shardOf(dateKey == null ? null : dateKey.s());
+    if (!dateKey.s().equals(DateKeys.shardKey(seasonID, dayID, shard))) {
+      throw new IllegalArgumentException("Cursor is not for this day: " + dateKey.s());
+    }
+    if (startKey.size() == 1) {
+      return shard;
+    }
+    if (startKey.size() != 3 || parseNumber(startKey.get("resortID")) != resortID) {
+      throw new IllegalArgumentException("Cursor is not for this resort day");
+    }
+    parseNumber(startKey.get("skierID"));
+    return shard;
+  }
+
+  /**
+   * @throws IllegalArgumentException unless {@code value} is an N attribute holding an int
+   */
+  private static int parseNumber(AttributeValue value) {
+    if (value == null || value.n() == null) {
+      throw new IllegalArgumentException("Cursor is missing a numeric key attribute");
+    }
+    try {
+      return Integer.parseInt(value.n());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Cursor has a non-numeric key attribute: " + value.n());
+    }
+  }
+
+  /**
+   * The unique-skier sketch of a resort day: the merge of every consumer's sketch, so its size
+   * and the cost of reading it do not depend on how many rides the day had.
+   *
+   * @return the merged sketch, or null if no consumer has written one for the day
+   */
+  public HyperLogLog getResortDaySkierSketch(int resortID, String seasonID, String dayID) {
+    QueryRequest.Builder request = QueryRequest.builder()
+        .tableName(sketchTableName)
+        .keyConditionExpression("dayKey = :dayKey")
+        .projectionExpression("hll")
+        .expressionAttributeValues(Map.of(
+            ":dayKey", AttributeValue.builder().s(resortID + "#" + seasonID + "#" + dayID).build()));
+
+    HyperLogLog[] merged = new HyperLogLog[1];
+    await(readPages(skierCountQueries, request, null, Integer.MAX_VALUE,
+        System.nanoTime() + skierCountDeadlineNanos, page -> {
+          for (Map<String, AttributeValue> item : page.items()) {
+            AttributeValue hll = item.get("hll");
+            if (hll == null || hll.b() == null) {
+              continue;
+            }
+            HyperLogLog sketch = HyperLogLog.fromBytes(hll.b().asByteArray());
+            if (merged[0] == null) {
+              merged[0] = sketch;
+            } else {
+              merged[0].merge(sketch);
+            }
+          }
+        }));
+    return merged[0];
+  }
+
+  /**
+   * Turn a DynamoDB continuation key into an opaque, URL-safe cursor string.
+   */
+  public static String encodeCursor(Map<String, AttributeValue> key) {
+    Map<String, Map<String, String>> encoded = new LinkedHashMap<>();
+    for (Map.Entry<String, AttributeValue> entry : key.entrySet()) {
+      AttributeValue value = entry.getValue();
+      encoded.put(entry.getKey(), value.n() != null ? Map.of("N", value.n()) : Map.of("S", value.s()));
+    }
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(CURSOR_GSON.toJson(encoded, CURSOR_TYPE).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reverse of {@link #encodeCursor}.
+   *
+   * @throws IllegalArgumentException if the cursor was not produced by {@link #encodeCursor}
+   */
+  public static Map<String, AttributeValue> decodeCursor(String cursor) {
+    Map<String, Map<String, String>> encoded;
+    try {
+      String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      encoded = CURSOR_GSON.fromJson(json, CURSOR_TYPE);
+    } catch (JsonParseException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+    if (encoded == null || encoded.isEmpty()) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    Map<String, AttributeValue> key = new HashMap<>();
+    for (Map.Entry<String, Map<String, String>> entry : encoded.entrySet()) {
+      Map<String, String> value = entry.getValue();
+      if (value == null) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      if (value.get("N") != null) {
+        key.put(entry.getKey(), AttributeValue.builder().n(value.get("N")).build());
+      } else if (value.get("S") != null) {
+        key.put(entry.getKey(), AttributeValue.builder().s(value.get("S")).build());
+      } else {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+    }
+    return key;
+  }
+
+  @Override
+  public void close() {
+    timers.shutdownNow();
+    dynamoDbClient.close();
+  }
+
+  /**
+   * Read pages one after another, each through {@code executor}, until the result is exhausted
+   * or {@code remaining} items have been read. Pages are handed to {@code onPage} in order.
+   *
+   * @param remaining item budget, or {@code Integer.MAX_VALUE} to read everything
+   * @return completes with the key to continue from, or null when nothing is left
+   */
+  private CompletableFuture<Map<String, AttributeValue>> readPages(HedgedQueryExecutor executor,
+      QueryRequest.Builder request, Map<String, AttributeValue> startKey, int remaining, long deadlineNanos,
+      Consumer<QueryResponse> onPage) {
+    QueryRequest pageRequest = request
+        .exclusiveStartKey(startKey)
+        .limit(remaining == Integer.MAX_VALUE ? null : remaining)
+        .build();
+    return executor.query(pageRequest, deadlineNanos).thenCompose(page -> {
+      onPage.accept(page);
+      Map<String, AttributeValue> lastKey =
+          page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+      // a query can stop short of Limit (1 MB pages), so keep going until the budget is used
+      int left = remaining == Integer.MAX_VALUE ? remaining : remaining - page.count();
+      if (lastKey == null || left <= 0) {
+        return CompletableFuture.completedFuture(lastKey);
+      }
+      return readPages(executor, request, lastKey, left, deadlineNanos, onPage);
+    });
+  }
+
+  /**
+   * Fail {@code call} with {@link QueryDeadlineException} (and cancel it) if it has not finished
+   * by {@code deadlineNanos}.
+   */
+  private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> call, long deadlineNanos, String name) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Future<?> timer = timers.schedule(() -> {
+      if (result.completeExceptionally(new QueryDeadlineException(name + " read deadline exceeded"))) {
+        call.cancel(true);
+      }
+    }, Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    call.whenComplete((value, error) -> {
+      timer.cancel(false);
+      if (error == null) {
+        result.complete(value);
+      } else {
+        result.completeExceptionally(error);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Wait for a read; it cannot outlive its deadline, so this never blocks for longer than that.
+   */
+  private static <T> T await(CompletableFuture<T> read) {
+    try {
+      return read.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Read shards from {@code shard} onwards until {@code remaining} rides have been read.
+   */
+  private CompletableFuture<Map<String, AttributeValue>> readShardPages(int resortID, String seasonID, String dayID,
+      int shard, Map<String, AttributeValue> startKey, int remaining, long deadlineNanos, RideVisitor visitor) {
+    int[] read = new int[1];
+    return readPages(resortDayQueries, resortDayRequest(resortID, seasonID, dayID, shard), startKey, remaining,
+        deadlineNanos, page -> {
+          read[0] += page.count();
+          visitRides(page, visitor);
+        }).thenCompose(lastKey -> {
+          int next = shard + 1;
+          if (lastKey != null || next == DateKeys.SHARD_COUNT) {
+            return CompletableFuture.completedFuture(lastKey);
+          }
+          if (read[0] >= remaining) {
+            Map<String, AttributeValue> nextShard = new HashMap<>();
+            nextShard.put("dateKey", AttributeValue.builder().s(DateKeys.shardKey(seasonID, dayID, next)).build());
+            return CompletableFuture.completedFuture(nextShard);
+          }
+          return readShardPages(resortID, seasonID, dayID, next, null, remaining - read[0], deadlineNanos, visitor);
+        });
+  }
+
+  private QueryRequest.Builder resortDayRequest(int resortID, String seasonID, String dayID, int shard) {
+    return QueryRequest.builder()
+        .tableName(tableName)
+        .indexName(RESORT_DATE_INDEX)
+        .keyConditionExpression("resortID = :resortID AND dateKey = :dateKey")
+        .projectionExpression(RIDE_PROJECTION)
+        .expressionAttributeNames(RIDE_ATTRIBUTE_NAMES)
+        .expressionAttributeValues(Map.of(
+            ":resortID", AttributeValue.builder().n(String.valueOf(resortID)).build(),
+            ":dateKey", AttributeValue.builder().s(DateKeys.shardKey(seasonID, dayID, shard)).build()
+        ));
+  }
+
+  private static void visitRides(QueryResponse page, RideVisitor visitor) {
+    for (Map<String, AttributeValue> item : page.items()) {
+      // Skip records missing required properties
+      if (item.get("skierID") == null || item.get("liftID") == null || item.get("time") == null) {
+        continue;
+      }
+      visitor.visit(getInt(item, "skierID"), getInt(item, "time"), getInt(item, "liftID"), getInt(item, "vertical"));
+    }
+  }
+
+  private List<LiftRideRecord> queryRides(HedgedQueryExecutor executor, QueryRequest.Builder request,
+      long deadlineNanos) {
+    List<LiftRideRecord> rides = new ArrayList<>();
+    await(readPages(executor, request, null, Integer.MAX_VALUE, System.nanoTime() + deadlineNanos,
+        page -> visitRides(page, (skierID, time, liftID, vertical) ->
+            rides.add(new LiftRideRecord(skierID, time, liftID, vertical)))));
+    return rides;
+  }
+
+  /**
+   * Rides of one shard, held until every shard has answered.
+   */
+  private static final class RideBuffer implements RideVisitor {
+    private int[] rides = new int[4 * 64];
+    private int size;
+
+    @Override
+    public void visit(int skierID, int time, int liftID, int vertical) {
+      if (size + 4 > rides.length) {
+        rides = Arrays.copyOf(rides, rides.length * 2);
+      }
+      rides[size++] = skierID;
+      rides[size++] = time;
+      rides[size++] = liftID;
+      rides[size++] = vertical;
+    }
+
+    void replay(RideVisitor visitor) {
+      for (int i = 0; i < size; i += 4) {
+        visitor.visit(rides[i], rides[i + 1], rides[i + 2], rides[i + 3]);
+      }
+    }
+  }
+
+  /**
+   * Read a numeric attribute, defaulting to 0 when it is missing.
+   */
+  private static int getInt(Map<String, AttributeValue> item, String name) {
+    AttributeValue value = item.get(name);
+    return (value != null && value.n() != null) ? Integer.parseInt(value.n()) : 0;
+  }
+}
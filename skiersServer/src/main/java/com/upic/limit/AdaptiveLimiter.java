@@ -0,0 +1,170 @@
+package com.upic.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limiter whose limit follows observed latency (gradient algorithm).
+ *
+ * Callers {@link #tryAcquire()} before doing the expensive part of a request and
+ * {@link #release} afterwards with the time it took (or {@link #releaseUnsampled()} if the
+ * request was answered without the backend). Samples are summed per window; at the
+ * end of each window one caller compares the window's average latency with the no-load
+ * baseline (the lowest window average seen; it only drifts up while the limit sits at its floor,
+ * so a backend that became slower for good is eventually accepted):
+ * <pre>
+ *   gradient = clamp(tolerance * baselineRtt / shortRtt, 0.5, 1.0)
+ *   newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * so the limit grows while latency stays flat and shrinks as soon as requests start queueing.
+ * Windows with timeouts/errors cut the limit by 10%. Requests over the limit are rejected
+ * immediately instead of waiting in Tomcat's queues.
+ */
+public class AdaptiveLimiter {
+  // per-window growth of the baseline while the limit is pinned at minLimit
+  private static final double BASELINE_DRIFT = 1.02;
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double tolerance;
+  private final double smoothing;
+  private final long windowNanos;
+  private final int minWindowSamples;
+
+  private volatile int limit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+
+  // current window, summed without locking
+  private final LongAdder windowRttNanos = new LongAdder();
+  private final LongAdder windowSamples = new LongAdder();
+  private final LongAdder windowDrops = new LongAdder();
+  private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+  private volatile long windowStart = System.nanoTime();
+
+  // only touched while holding updateLock
+  private final ReentrantLock updateLock = new ReentrantLock();
+  private double estimatedLimit;
+  private double baselineRttNanos;
+
+  public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance,
+                         double smoothing, long windowMs, int minWindowSamples) {
+    this.name = name;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.tolerance = tolerance;
+    this.smoothing = smoothing;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    this.minWindowSamples = minWindowSamples;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.estimatedLimit = this.limit;
+  }
+
+  /**
+   * @return true if the caller may proceed and must call {@link #release} afterwards
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= limit) {
+        rejected.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        int observed = current + 1;
+        int max = windowMaxInFlight.get();
+        while (observed > max && !windowMaxInFlight.compareAndSet(max, observed)) {
+          max = windowMaxInFlight.get();
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Give back a permit taken with {@link #tryAcquire()}.
+   *
+   * @param startNanos {@link System#nanoTime()} taken right after acquiring
+   * @param dropped true if the work failed or timed out, which counts as an overload signal
+   */
+  public void release(long startNanos, boolean dropped) {
+    inFlight.decrementAndGet();
+    long now = System.nanoTime();
+    if (dropped) {
+      windowDrops.increment();
+    } else {
+      windowRttNanos.add(now - startNanos);
+      windowSamples.increment();
+    }
+    if (now - windowStart >= windowNanos && updateLock.tryLock()) {
+      try {
+        if (now - windowStart >= windowNanos) {
+          updateLimit(now);
+        }
+      } finally {
+        updateLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Give back a permit without a latency sample, for a request that never reached the backend
+   * (cache hit, 304, rejected input). Its time says nothing about backend load and would pull
+   * the baseline down to the cache-hit time.
+   */
+  public void releaseUnsampled() {
+    inFlight.decrementAndGet();
+  }
+
+  private void updateLimit(long now) {
+    long samples = windowSamples.sumThenReset();
+    long rttSum = windowRttNanos.sumThenReset();
+    long drops = windowDrops.sumThenReset();
+    int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+    windowStart = now;
+
+    if (drops > 0) {
+      estimatedLimit = estimatedLimit * 0.9;
+    } else if (samples >= minWindowSamples) {
+      double shortRtt = (double) rttSum / samples;
+      if (baselineRttNanos == 0) {
+        baselineRttNanos = shortRtt;
+      } else if (estimatedLimit <= minLimit) {
+        // squeezed to the floor and still slow: the backend got slower for good, accept it gradually
+        baselineRttNanos = Math.min(shortRtt, baselineRttNanos * BASELINE_DRIFT);
+      } else {
+        baselineRttNanos = Math.min(shortRtt, baselineRttNanos);
+      }
+      // only grow when the limit was actually the bottleneck
+      if (maxInFlight < estimatedLimit / 2) {
+        return;
+      }
+      double gradient = Math.max(0.5, Math.min(1.0, tolerance * baselineRttNanos / shortRtt));
+      double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+      estimatedLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+    } else {
+      return;
+    }
+    estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+    limit = (int) estimatedLimit;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+}
@@ -0,0 +1,107 @@
+package com.upic.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-resort token buckets, so one resort replaying a day of scans cannot use up the shared
+ * ingest or query capacity.
+ *
+ * Each bucket is a single "theoretical arrival time" updated with CAS (GCRA, equivalent to a
+ * token bucket of {@code burst} tokens refilled at {@code ratePerSecond}). Buckets sit a cache
+ * line apart so resorts do not contend with each other.
+ */
+public class ResortQuotas {
+  private static final int STRIDE = 8; // longs per cache line
+
+  private final String name;
+  private final int maxResortID;
+  private final long[] intervalNanos; // 0 = unlimited
+  private final long[] burstNanos;
+  private final AtomicLongArray arrivalTimes;
+  private final LongAdder[] admitted;
+  private final LongAdder[] throttled;
+
+  /**
+   * @param ratePerSecond per resort index 0..maxResortID; 0 or less means no quota
+   * @param burst per resort index, how many requests may arrive back to back
+   */
+  public ResortQuotas(String name, int maxResortID, double[] ratePerSecond, int[] burst) {
+    this.name = name;
+    this.maxResortID = maxResortID;
+    this.intervalNanos = new long[maxResortID + 1];
+    this.burstNanos = new long[maxResortID + 1];
+    this.arrivalTimes = new AtomicLongArray((maxResortID + 1) * STRIDE);
+    this.admitted = new LongAdder[maxResortID + 1];
+    this.throttled = new LongAdder[maxResortID + 1];
+
+    long now = System.nanoTime();
+    for (int resortID = 0; resortID <= maxResortID; resortID++) {
+      if (ratePerSecond[resortID] > 0) {
+        intervalNanos[resortID] = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond[resortID]);
+        burstNanos[resortID] = intervalNanos[resortID] * Math.max(1, burst[resortID]);
+      }
+      arrivalTimes.set(resortID * STRIDE, now);
+      admitted[resortID] = new LongAdder();
+      throttled[resortID] = new LongAdder();
+    }
+  }
+
+  public boolean tryAcquire(int resortID) {
+    return tryAcquire(resortID, 1);
+  }
+
+  /**
+   * Take {@code permits} tokens from the resort's bucket.
+   *
+   * @return false if the resort is over its quota; unknown resorts are always admitted and
+   *         left to request validation
+   */
+  public boolean tryAcquire(int resortID, int permits) {
+    if (resortID < 0 || resortID > maxResortID) {
+      return true;
+    }
+    long interval = intervalNanos[resortID];
+    if (interval == 0) {
+      admitted[resortID].add(permits);
+      return true;
+    }
+
+    int slot = resortID * STRIDE;
+    long cost = interval * permits;
+    while (true) {
+      long now = System.nanoTime();
+      long arrival = arrivalTimes.get(slot);
+      long next = Math.max(arrival, now) + cost;
+      if (next - now > burstNanos[resortID]) {
+        throttled[resortID].add(permits);
+        return false;
+      }
+      if (arrivalTimes.compareAndSet(slot, arrival, next)) {
+        admitted[resortID].add(permits);
+        return true;
+      }
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getMaxResortID() {
+    return maxResortID;
+  }
+
+  public boolean hasQuota(int resortID) {
+    return resortID >= 0 && resortID <= maxResortID && intervalNanos[resortID] != 0;
+  }
+
+  public long getAdmittedCount(int resortID) {
+    return admitted[resortID].sum();
+  }
+
+  public long getThrottledCount(int resortID) {
+    return throttled[resortID].sum();
+  }
+}
@@ -0,0 +1,30 @@
+package com.upic.metrics;
+
+/**
+ * The routes metrics are kept for, with the labels they are exported under.
+ */
+public enum Endpoint {
+  POST_LIFT_RIDE("POST", "/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}"),
+  POST_BATCH("POST", "/skiers/batch"),
+  GET_VERTICAL("GET", "/skiers/{skierID}/vertical"),
+  GET_SKIER_DAY("GET", "/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}"),
+  GET_RESORT_DAY_SKIERS("GET", "/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers"),
+  GET_RESORT_DAY_SKIER_COUNT("GET", "/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers/count"),
+  UNMATCHED("ANY", "unmatched");
+
+  private final String method;
+  private final String route;
+
+  Endpoint(String method, String route) {
+    this.method = method;
+    this.route = route;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getRoute() {
+    return route;
+  }
+}
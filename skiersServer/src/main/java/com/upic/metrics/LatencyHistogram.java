@@ -0,0 +1,109 @@
+package com.upic.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (four per power of two), in the spirit
+ * of HdrHistogram. Recording is one array increment plus two adders and never allocates, so it
+ * can sit on every request. Values are kept at microsecond resolution; anything above ~25 days
+ * lands in the last bucket.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;
+  static final int BUCKET_COUNT = (MAX_EXPONENT - 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumMicros = new LongAdder();
+
+  public void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(bucketIndex(micros));
+    count.increment();
+    sumMicros.add(micros);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSumMicros() {
+    return sumMicros.sum();
+  }
+
+  /**
+   * Upper bound (in microseconds) of the bucket holding the given percentile, or 0 when empty.
+   *
+   * @param percentile between 0 and 100
+   */
+  public long valueAtPercentileMicros(double percentile) {
+    return valueAtPercentileMicros(percentile, snapshot());
+  }
+
+  /**
+   * Like {@link #valueAtPercentileMicros(double)}, over the samples of all given histograms.
+   */
+  public static long valueAtPercentileMicros(double percentile, LatencyHistogram... histograms) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (LatencyHistogram histogram : histograms) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        snapshot[i] += histogram.counts.get(i);
+      }
+    }
+    return valueAtPercentileMicros(percentile, snapshot);
+  }
+
+  private static long valueAtPercentileMicros(double percentile, long[] snapshot) {
+    long total = 0;
+    for (long c : snapshot) {
+      total += c;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return upperBoundMicros(i);
+      }
+    }
+    return upperBoundMicros(snapshot.length - 1);
+  }
+
+  long[] snapshot() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Exclusive upper bound of a bucket, in microseconds.
+   */
+  static long upperBoundMicros(int index) {
+    if (index < SUB_BUCKETS) {
+      return index + 1;
+    }
+    int exponent = index / SUB_BUCKETS + 1;
+    int subBucket = index % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+  }
+}
@@ -0,0 +1,232 @@
+package com.upic.metrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide request metrics for skiersServer, exported by {@code MetricsServlet}.
+ *
+ * Everything is pre-allocated per {@link Endpoint} and {@link Stage}, so the recording calls on
+ * the request path are plain array lookups and atomic increments. Typical use:
+ * <pre>
+ *   long start = System.nanoTime();
+ *   metrics.requestStarted(endpoint);
+ *   ...
+ *   metrics.recordStage(endpoint, Stage.QUERY, queryStart);
+ *   ...
+ *   metrics.requestFinished(endpoint, start, response.getStatus());
+ * </pre>
+ */
+public final class ServerMetrics {
+  private static final Endpoint[] ENDPOINTS = Endpoint.values();
+  private static final Stage[] STAGES = Stage.values();
+  private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+  // exported "le" bounds: powers of two from 16us to ~67s; finer buckets are folded in
+  private static final int MIN_EXPORTED_EXPONENT = 4;
+  private static final int MAX_EXPORTED_EXPONENT = 26;
+
+  private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+  private final LatencyHistogram[] requestLatency = new LatencyHistogram[ENDPOINTS.length];
+  private final LatencyHistogram[][] stageLatency = new LatencyHistogram[ENDPOINTS.length][STAGES.length];
+  private final AtomicLongArray inFlight = new AtomicLongArray(ENDPOINTS.length);
+  private final LongAdder[][] responses = new LongAdder[ENDPOINTS.length][STATUS_CLASSES.length];
+  private final LongAdder publishFailures = new LongAdder();
+  private final LongAdder publishRejections = new LongAdder();
+  // values owned by other components (limiters, queues, ...), read at scrape time
+  private final Map<String, Family> families = new LinkedHashMap<>();
+
+  private ServerMetrics() {
+    for (int e = 0; e < ENDPOINTS.length; e++) {
+      requestLatency[e] = new LatencyHistogram();
+      for (int s = 0; s < STAGES.length; s++) {
+        stageLatency[e][s] = new LatencyHistogram();
+      }
+      for (int c = 0; c < STATUS_CLASSES.length; c++) {
+        responses[e][c] = new LongAdder();
+      }
+    }
+  }
+
+  public static ServerMetrics get() {
+    return INSTANCE;
+  }
+
+  public void requestStarted(Endpoint endpoint) {
+    inFlight.incrementAndGet(endpoint.ordinal());
+  }
+
+  /**
+   * Close a request opened with {@link #requestStarted}.
+   *
+   * @param startNanos {@link System#nanoTime()} taken when the request arrived
+   */
+  public void requestFinished(Endpoint endpoint, long startNanos, int statusCode) {
+    int e = endpoint.ordinal();
+    inFlight.decrementAndGet(e);
+    requestLatency[e].recordNanos(System.nanoTime() - startNanos);
+    int statusClass = statusCode / 100 - 1;
+    if (statusClass >= 0 && statusClass < STATUS_CLASSES.length) {
+      responses[e][statusClass].increment();
+    }
+  }
+
+  /**
+   * Record the time from {@code startNanos} until now against one stage of an endpoint.
+   */
+  public void recordStage(Endpoint endpoint, Stage stage, long startNanos) {
+    stageLatency[endpoint.ordinal()][stage.ordinal()].recordNanos(System.nanoTime() - startNanos);
+  }
+
+  /** A message the broker did not confirm, or that could not be published at all. */
+  public void publishFailed() {
+    publishFailures.increment();
+  }
+
+  public void publishFailed(int count) {
+    publishFailures.add(count);
+  }
+
+  /** A message turned away because the publish queue was full. */
+  public void publishRejected() {
+    publishRejections.increment();
+  }
+
+  /**
+   * Export a value that another component keeps, e.g. a queue depth or a limit.
+   *
+   * @param labels Prometheus labels without braces, e.g. {@code kind="read"}, or "" for none
+   */
+  public void registerGauge(String name, String help, String labels, LongSupplier value) {
+    register(name, "gauge", help, labels, value);
+  }
+
+  /**
+   * Like {@link #registerGauge} for a value that only ever increases.
+   */
+  public void registerCounter(String name, String help, String labels, LongSupplier value) {
+    register(name, "counter", help, labels, value);
+  }
+
+  private synchronized void register(String name, String type, String help, String labels, LongSupplier value) {
+    Family family = families.computeIfAbsent(name, n -> new Family(type, help));
+    family.series.put(labels, value); // re-registering (servlet re-init) replaces the old supplier
+  }
+
+  public LatencyHistogram getRequestLatency(Endpoint endpoint) {
+    return requestLatency[endpoint.ordinal()];
+  }
+
+  public LatencyHistogram getStageLatency(Endpoint endpoint, Stage stage) {
+    return stageLatency[endpoint.ordinal()][stage.ordinal()];
+  }
+
+  /**
+   * Write all metrics in the Prometheus text exposition format (version 0.0.4).
+   */
+  public void writePrometheus(PrintWriter out) {
+    out.println("# HELP skiers_request_duration_seconds Request latency by endpoint.");
+    out.println("# TYPE skiers_request_duration_seconds histogram");
+    for (Endpoint endpoint : ENDPOINTS) {
+      writeHistogram(out, "skiers_request_duration_seconds", labels(endpoint), requestLatency[endpoint.ordinal()]);
+    }
+
+    out.println("# HELP skiers_stage_duration_seconds Latency of one processing stage by endpoint.");
+    out.println("# TYPE skiers_stage_duration_seconds histogram");
+    for (Endpoint endpoint : ENDPOINTS) {
+      for (Stage stage : STAGES) {
+        LatencyHistogram histogram = stageLatency[endpoint.ordinal()][stage.ordinal()];
+        if (histogram.getCount() > 0) {
+          writeHistogram(out, "skiers_stage_duration_seconds",
+              labels(endpoint) + ",stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\"", histogram);
+        }
+      }
+    }
+
+    out.println("# HELP skiers_requests_total Completed requests by endpoint and status class.");
+    out.println("# TYPE skiers_requests_total counter");
+    for (Endpoint endpoint : ENDPOINTS) {
+      for (int c = 0; c < STATUS_CLASSES.length; c++) {
+        long value = responses[endpoint.ordinal()][c].sum();
+        if (value > 0) {
+          out.println("skiers_requests_total{" + labels(endpoint) + ",code=\"" + STATUS_CLASSES[c] + "\"} " + value);
+        }
+      }
+    }
+
+    out.println("# HELP skiers_requests_in_flight Requests currently being handled.");
+    out.println("# TYPE skiers_requests_in_flight gauge");
+    for (Endpoint endpoint : ENDPOINTS) {
+      out.println("skiers_requests_in_flight{" + labels(endpoint) + "} " + inFlight.get(endpoint.ordinal()));
+    }
+
+    out.println("# HELP skiers_publish_failures_total Lift rides that could not be published or were not confirmed.");
+    out.println("# TYPE skiers_publish_failures_total counter");
+    out.println("skiers_publish_failures_total " + publishFailures.sum());
+    out.println("# HELP skiers_publish_rejected_total Lift rides turned away because the publish queue was full.");
+    out.println("# TYPE skiers_publish_rejected_total counter");
+    out.println("skiers_publish_rejected_total " + publishRejections.sum());
+
+    List<Map.Entry<String, Family>> registered;
+    synchronized (this) {
+      registered = new ArrayList<>(families.entrySet());
+    }
+    for (Map.Entry<String, Family> entry : registered) {
+      String name = entry.getKey();
+      Family family = entry.getValue();
+      out.println("# HELP " + name + " " + family.help);
+      out.println("# TYPE " + name + " " + family.type);
+      synchronized (this) {
+        for (Map.Entry<String, LongSupplier> series : family.series.entrySet()) {
+          String labels = series.getKey().isEmpty() ? "" : "{" + series.getKey() + "}";
+          out.println(name + labels + " " + series.getValue().getAsLong());
+        }
+      }
+    }
+  }
+
+  private static String labels(Endpoint endpoint) {
+    return "method=\"" + endpoint.getMethod() + "\",route=\"" + endpoint.getRoute() + "\"";
+  }
+
+  private static void writeHistogram(PrintWriter out, String name, String labels, LatencyHistogram histogram) {
+    long[] buckets = histogram.snapshot();
+    long cumulative = 0;
+    int index = 0;
+    for (int exponent = MIN_EXPORTED_EXPONENT; exponent <= MAX_EXPORTED_EXPONENT; exponent++) {
+      long boundMicros = 1L << exponent;
+      while (index < buckets.length && LatencyHistogram.upperBoundMicros(index) <= boundMicros) {
+        cumulative += buckets[index++];
+      }
+      out.println(name + "_bucket{" + labels + ",le=\"" + seconds(boundMicros) + "\"} " + cumulative);
+    }
+    while (index < buckets.length) {
+      cumulative += buckets[index++];
+    }
+    out.println(name + "_bucket{" + labels + ",le=\"+Inf\"} " + cumulative);
+    out.println(name + "_sum{" + labels + "} " + seconds(histogram.getSumMicros()));
+    out.println(name + "_count{" + labels + "} " + cumulative);
+  }
+
+  private static String seconds(long micros) {
+    return Double.toString(micros / 1_000_000.0);
+  }
+
+  private static final class Family {
+    final String type;
+    final String help;
+    final Map<String, LongSupplier> series = new LinkedHashMap<>();
+
+    Family(String type, String help) {
+      this.type = type;
+      this.help = help;
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package com.upic.metrics;
+
+/**
+ * Steps inside a request that get their own latency histogram.
+ */
+public enum Stage {
+  PARSE,
+  VALIDATE,
+  PUBLISH,
+  QUERY,
+  SERIALIZE
+}
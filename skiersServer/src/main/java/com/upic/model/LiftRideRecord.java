@@ -0,0 +1,35 @@
+package com.upic.model;
+
+/**
+ * A stored lift ride as read back from DynamoDB.
+ * Unlike {@link LiftRide} (the POST payload) it also carries the skier and the derived vertical.
+ */
+public class LiftRideRecord {
+  private final int skierID;
+  private final int time;
+  private final int liftID;
+  private final int vertical;
+
+  public LiftRideRecord(int skierID, int time, int liftID, int vertical) {
+    this.skierID = skierID;
+    this.time = time;
+    this.liftID = liftID;
+    this.vertical = vertical;
+  }
+
+  public int getSkierID() {
+    return skierID;
+  }
+
+  public int getTime() {
+    return time;
+  }
+
+  public int getLiftID() {
+    return liftID;
+  }
+
+  public int getVertical() {
+    return vertical;
+  }
+}
@@ -0,0 +1,25 @@
+package com.upic.queue;
+
+import com.upic.model.LiftRide;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What the POST handlers need from the ingest path: publish one ride, either waiting for the
+ * broker or getting a future for it.
+ */
+public interface LiftRidePublisher {
+  /**
+   * Publish a lift ride and block until it is safely handed off.
+   *
+   * @throws IOException if the ride could not be handed off
+   */
+  void sendMessage(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID) throws IOException;
+
+  /**
+   * Publish a lift ride without blocking.
+   *
+   * @return a future completed once the ride is safely handed off
+   */
+  CompletableFuture<Void> publishAsync(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID);
+}
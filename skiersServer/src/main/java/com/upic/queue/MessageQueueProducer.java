@@ -1,66 +1,178 @@
 package com.upic.queue;
 
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.ConnectionFactory;
-import com.google.gson.Gson;
+import com.upic.codec.LiftRideMessage;
+import com.upic.config.RabbitMQConfig;
 import com.upic.model.LiftRide;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
-public class MessageQueueProducer {
-  private static final String QUEUE_NAME = "lift_ride_queue";
-  private static final String RABBITMQ_HOST = "54.189.112.229"; // RabbitMQ server IP
-  private static final String RABBITMQ_USER = "guest"; // RabbitMQ username
-  private static final String RABBITMQ_PASS = "guest"; // RabbitMQ password
+/**
+ * Publishes lift ride events to RabbitMQ through a bounded pool of channels.
+ *
+ * Each publish borrows a channel, writes the message and hands the channel straight back,
+ * so concurrent request threads never share a channel mid-frame. With publisher confirms
+ * enabled, {@link #sendMessage} only returns once the broker has confirmed the message.
+ * Bodies are encoded with the shared {@code LiftRideCodec} (JSON or binary, see rabbitmq.messageFormat).
+ */
+public class MessageQueueProducer implements LiftRidePublisher, AutoCloseable {
+  private final RabbitMQConfig config;
+  private final PublisherChannelFactory channelFactory;
+  private final GenericObjectPool<PublisherChannel> channelPool;
 
-  //private static final String RABBITMQ_HOST = "localhost"; // local RabbitMQ
-  //private static final String RABBITMQ_USER = "guest"; // default user
-  //private static final String RABBITMQ_PASS = "guest"; // default password
+  public MessageQueueProducer(RabbitMQConfig config) {
+    this.config = config;
+    this.channelFactory = new PublisherChannelFactory(config);
 
-  private static final Gson gson = new Gson();
+    GenericObjectPoolConfig<PublisherChannel> poolConfig = new GenericObjectPoolConfig<>();
+    poolConfig.setMaxTotal(config.getMaxChannels());
+    poolConfig.setMaxIdle(config.getMaxChannels());
+    poolConfig.setMinIdle(config.getMinIdleChannels());
+    poolConfig.setBlockWhenExhausted(true);
+    poolConfig.setMaxWait(Duration.ofMillis(config.getBorrowTimeoutMs()));
+    poolConfig.setTestOnBorrow(true);
+    poolConfig.setJmxEnabled(false);
+    this.channelPool = new GenericObjectPool<>(channelFactory, poolConfig);
+  }
+
+  /**
+   * Publish a lift ride and block until the broker has confirmed it.
+   *
+   * @throws IOException if the message could not be published or was not confirmed in time
+   */
+  @Override
+  public void sendMessage(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID)
+      throws IOException {
+    CompletableFuture<Void> confirm = publishAsync(liftRide, resortID, seasonID, dayID, skierID);
+    try {
+      confirm.get(config.getConfirmTimeoutMs(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for publisher confirm", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Message was not confirmed by broker", e.getCause());
+    } catch (TimeoutException e) {
+      throw new IOException("Timed out waiting for publisher confirm", e);
+    }
+  }
+
+  /**
+   * Publish a lift ride without waiting for the broker.
+   *
+   * @return a future completed when the broker confirms the message (immediately if confirms are off)
+   */
+  @Override
+  public CompletableFuture<Void> publishAsync(LiftRide liftRide, int resortID, String seasonID, String dayID,
+                                              int skierID) {
+    return publishAsync(new LiftRideMessage(resortID, seasonID, dayID, skierID,
+        liftRide.getTime(), liftRide.getLiftID()));
+  }
 
-  private static Connection connection;
-  private static Channel channel;
+  /**
+   * Publish an already built message without waiting for the broker.
+   *
+   * @return a future completed when the broker confirms the message (immediately if confirms are off)
+   */
+  public CompletableFuture<Void> publishAsync(LiftRideMessage message) {
+    return publishAsync(message, config.getBorrowTimeoutMs());
+  }
 
-  static {
+  /**
+   * Publish an already built message, waiting at most {@code waitMs} each for a pooled channel
+   * and for room in its confirm window. Opening a new channel is not bounded by {@code waitMs};
+   * check {@link #isBrokerDown()} first to skip the broker while it is unreachable.
+   *
+   * @return a future completed when the broker confirms the message, or failed if it could not be sent
+   */
+  public CompletableFuture<Void> publishAsync(LiftRideMessage message, long waitMs) {
+    PublisherChannel channel = null;
     try {
-      ConnectionFactory factory = new ConnectionFactory();
-      factory.setHost(RABBITMQ_HOST);
-      factory.setUsername(RABBITMQ_USER);
-      factory.setPassword(RABBITMQ_PASS);
-      connection = factory.newConnection();
-      channel = connection.createChannel();
-      channel.queueDeclare(QUEUE_NAME, true, false, false, null);
+      channel = channelPool.borrowObject(waitMs);
+      channelFactory.channelBorrowed();
+      return channel.publish(config.getQueueName(), message, waitMs);
     } catch (Exception e) {
-      e.printStackTrace();
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      if (channel != null && !channel.isOpen()) {
+        invalidate(channel);
+        channel = null;
+      }
+      return CompletableFuture.failedFuture(e);
+    } finally {
+      if (channel != null) {
+        channelPool.returnObject(channel);
+      }
     }
   }
 
-  public static void sendMessage(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID) {
+  /**
+   * Publish a batch of lift rides back to back on one channel.
+   *
+   * @return one confirm future per message, in the same order as {@code messages}
+   */
+  public List<CompletableFuture<Void>> publishBatch(List<LiftRideMessage> messages) {
+    List<CompletableFuture<Void>> confirms = new ArrayList<>(messages.size());
+    PublisherChannel channel = null;
     try {
-      String message = gson.toJson(new LiftRideMessage(liftRide, resortID, seasonID, dayID, skierID));
-      channel.basicPublish("", QUEUE_NAME, null, message.getBytes());
+      channel = channelPool.borrowObject();
+      channelFactory.channelBorrowed();
+      for (LiftRideMessage message : messages) {
+        confirms.add(channel.publish(config.getQueueName(), message, config.getConfirmTimeoutMs()));
+      }
     } catch (Exception e) {
-      e.printStackTrace();
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      if (channel != null && !channel.isOpen()) {
+        invalidate(channel);
+        channel = null;
+      }
+      // Everything not yet published fails with the same cause
+      while (confirms.size() < messages.size()) {
+        confirms.add(CompletableFuture.failedFuture(e));
+      }
+    } finally {
+      if (channel != null) {
+        channelPool.returnObject(channel);
+      }
     }
+    return confirms;
   }
 
+  /**
+   * Whether the broker was unreachable at the last connection attempt and no channel has been
+   * borrowed since. Publishes that need a new channel fail at once during the reconnect backoff.
+   */
+  public boolean isBrokerDown() {
+    return channelFactory.isBrokerDown();
+  }
+
+  public long getConfirmTimeoutMs() {
+    return config.getConfirmTimeoutMs();
+  }
 
-  static class LiftRideMessage {
-    int resortID;
-    String seasonID;
-    String dayID;
-    int skierID;
-    int time;
-    int liftID;
+  /**
+   * Close all pooled channels and their connections.
+   */
+  @Override
+  public void close() {
+    channelPool.close();
+    channelFactory.closeConnections();
+  }
 
-    public LiftRideMessage(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID) {
-      this.resortID = resortID;
-      this.seasonID = seasonID;
-      this.dayID = dayID;
-      this.skierID = skierID;
-      this.time = liftRide.getTime();
-      this.liftID = liftRide.getLiftID();
+  private void invalidate(PublisherChannel channel) {
+    try {
+      channelPool.invalidateObject(channel);
+    } catch (Exception e) {
+      System.err.println("[!] Failed to invalidate channel: " + e.getMessage());
     }
   }
 }
-
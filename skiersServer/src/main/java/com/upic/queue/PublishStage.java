@@ -0,0 +1,103 @@
+package com.upic.queue;
+
+import com.upic.model.LiftRide;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounded hand-off between the async ingest path and RabbitMQ.
+ *
+ * Request handling enqueues validated rides without blocking; a few dedicated publisher
+ * threads drain the queue into a {@link LiftRidePublisher}. When the queue is full the
+ * submission fails fast so the caller can shed load instead of piling up requests.
+ */
+public class PublishStage implements AutoCloseable {
+  private final LiftRidePublisher producer;
+  private final BlockingQueue<PublishTask> queue;
+  private final Thread[] publishers;
+  private volatile boolean running = true;
+
+  public PublishStage(LiftRidePublisher producer, int capacity, int publisherThreads) {
+    this.producer = producer;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.publishers = new Thread[publisherThreads];
+    for (int i = 0; i < publisherThreads; i++) {
+      publishers[i] = new Thread(this::drain, "publish-stage-" + i);
+      publishers[i].setDaemon(true);
+      publishers[i].start();
+    }
+  }
+
+  /**
+   * Queue a ride for publishing.
+   *
+   * @return a future completed once the broker confirms the message; it fails with
+   *         {@link RejectedExecutionException} right away if the stage is full
+   */
+  public CompletableFuture<Void> submit(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID) {
+    PublishTask task = new PublishTask(liftRide, resortID, seasonID, dayID, skierID);
+    if (!running || !queue.offer(task)) {
+      return CompletableFuture.failedFuture(new RejectedExecutionException("Publish stage is full"));
+    }
+    return task.result;
+  }
+
+  public int getQueuedCount() {
+    return queue.size();
+  }
+
+  /**
+   * Stop the publisher threads; anything still queued is failed.
+   */
+  @Override
+  public void close() {
+    running = false;
+    for (Thread publisher : publishers) {
+      publisher.interrupt();
+    }
+    PublishTask task;
+    while ((task = queue.poll()) != null) {
+      task.result.completeExceptionally(new RejectedExecutionException("Publish stage closed"));
+    }
+  }
+
+  private void drain() {
+    while (running) {
+      PublishTask task;
+      try {
+        task = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      producer.publishAsync(task.liftRide, task.resortID, task.seasonID, task.dayID, task.skierID)
+          .whenComplete((ignored, error) -> {
+            if (error == null) {
+              task.result.complete(null);
+            } else {
+              task.result.completeExceptionally(error);
+            }
+          });
+    }
+  }
+
+  private static class PublishTask {
+    final LiftRide liftRide;
+    final int resortID;
+    final String seasonID;
+    final String dayID;
+    final int skierID;
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    PublishTask(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID) {
+      this.liftRide = liftRide;
+      this.resortID = resortID;
+      this.seasonID = seasonID;
+      this.dayID = dayID;
+      this.skierID = skierID;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package com.upic.queue;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.MessageProperties;
+import com.upic.codec.LiftRideCodec;
+import com.upic.codec.LiftRideMessage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pooled AMQP channel plus the publisher-confirm bookkeeping for it.
+ *
+ * A borrower has exclusive use of the channel only for the duration of {@link #publish};
+ * the returned future is completed later by the broker's ack/nack on the connection thread,
+ * so the channel can go back to the pool while its confirms are still outstanding.
+ * At most {@code window} publishes may be unconfirmed on one channel at a time.
+ *
+ * Binary messages are encoded into a buffer owned by this channel. That is safe to reuse because
+ * the (blocking IO) AMQP client has written the frame out by the time basicPublish returns.
+ */
+class PublisherChannel {
+  private static final CompletableFuture<Void> CONFIRMED = CompletableFuture.completedFuture(null);
+  private static final AMQP.BasicProperties JSON_PROPS = MessageProperties.PERSISTENT_BASIC.builder()
+      .contentType(LiftRideCodec.CONTENT_TYPE_JSON).build();
+  private static final AMQP.BasicProperties BINARY_PROPS = MessageProperties.PERSISTENT_BASIC.builder()
+      .contentType(LiftRideCodec.CONTENT_TYPE_BINARY).build();
+
+  private final Channel channel;
+  private final boolean confirmsEnabled;
+  private final boolean binaryFormat;
+  private final byte[] encodeBuffer = new byte[LiftRideCodec.BINARY_RECORD_SIZE];
+  private final Semaphore window;
+  private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> outstanding = new ConcurrentSkipListMap<>();
+
+  PublisherChannel(Channel channel, boolean confirmsEnabled, int windowSize, boolean binaryFormat)
+      throws IOException {
+    this.channel = channel;
+    this.confirmsEnabled = confirmsEnabled;
+    this.binaryFormat = binaryFormat;
+    this.window = new Semaphore(windowSize);
+
+    if (confirmsEnabled) {
+      channel.confirmSelect();
+      channel.addConfirmListener(new ConfirmListener() {
+        @Override
+        public void handleAck(long deliveryTag, boolean multiple) {
+          settle(deliveryTag, multiple, null);
+        }
+
+        @Override
+        public void handleNack(long deliveryTag, boolean multiple) {
+          settle(deliveryTag, multiple, new IOException("Broker nacked message " + deliveryTag));
+        }
+      });
+      // Confirms for anything still in flight will never arrive once the channel is gone
+      channel.addShutdownListener(cause -> failAll(new IOException("Channel closed", cause)));
+    }
+  }
+
+  /**
+   * Publish one message and return a future completed when the broker confirms it.
+   * Waits up to {@code windowTimeoutMs} for room in the confirm window.
+   */
+  CompletableFuture<Void> publish(String queueName, LiftRideMessage message, long windowTimeoutMs)
+      throws IOException, InterruptedException {
+    if (!confirmsEnabled) {
+      basicPublish(queueName, message);
+      return CONFIRMED;
+    }
+
+    if (!window.tryAcquire(windowTimeoutMs, TimeUnit.MILLISECONDS)) {
+      throw new IOException("Confirm window full on channel " + channel.getChannelNumber());
+    }
+    long seqNo = channel.getNextPublishSeqNo();
+    CompletableFuture<Void> confirm = new CompletableFuture<>();
+    outstanding.put(seqNo, confirm);
+    try {
+      basicPublish(queueName, message);
+    } catch (IOException | RuntimeException e) {
+      if (outstanding.remove(seqNo) != null) {
+        window.release();
+      }
+      throw e;
+    }
+    return confirm;
+  }
+
+  private void basicPublish(String queueName, LiftRideMessage message) throws IOException {
+    if (binaryFormat && LiftRideCodec.canEncodeBinary(message)) {
+      LiftRideCodec.encodeBinary(message, encodeBuffer, 0);
+      channel.basicPublish("", queueName, BINARY_PROPS, encodeBuffer);
+    } else {
+      channel.basicPublish("", queueName, JSON_PROPS, LiftRideCodec.encodeJson(message));
+    }
+  }
+
+  boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  Channel getChannel() {
+    return channel;
+  }
+
+  void close() {
+    try {
+      if (channel.isOpen()) {
+        channel.close();
+      }
+    } catch (Exception e) {
+      System.err.println("[!] Failed to close channel: " + e.getMessage());
+    }
+  }
+
+  private void settle(long deliveryTag, boolean multiple, Exception error) {
+    if (multiple) {
+      Map<Long, CompletableFuture<Void>> confirmed = outstanding.headMap(deliveryTag, true);
+      for (Long tag : confirmed.keySet()) {
+        complete(outstanding.remove(tag), error);
+      }
+    } else {
+      complete(outstanding.remove(deliveryTag), error);
+    }
+  }
+
+  private void failAll(Exception error) {
+    for (Long tag : outstanding.keySet()) {
+      complete(outstanding.remove(tag), error);
+    }
+  }
+
+  private void complete(CompletableFuture<Void> confirm, Exception error) {
+    if (confirm == null) {
+      return;
+    }
+    window.release();
+    if (error == null) {
+      confirm.complete(null);
+    } else {
+      confirm.completeExceptionally(error);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.upic.queue;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.upic.config.RabbitMQConfig;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+
+/**
+ * commons-pool2 factory that opens publisher channels round-robin over a fixed set of connections.
+ * Connections are opened lazily, so the server can start while the broker is unreachable.
+ *
+ * After a connection attempt fails, further attempts fail immediately for
+ * rabbitmq.reconnectBackoffMs, so request threads are not queued behind one connect timeout
+ * after another while the broker is down.
+ */
+class PublisherChannelFactory extends BasePooledObjectFactory<PublisherChannel> {
+  private final ConnectionFactory connectionFactory;
+  private final RabbitMQConfig config;
+  private final Connection[] connections;
+  private final AtomicInteger nextConnection = new AtomicInteger();
+  private final long reconnectBackoffNanos;
+  // set when a connection attempt fails, cleared when one succeeds or a channel is borrowed
+  private volatile boolean brokerDown;
+  private long retryAfterNanos; // guarded by this
+
+  PublisherChannelFactory(RabbitMQConfig config) {
+    this.config = config;
+    this.connectionFactory = config.buildConnectionFactory();
+    this.connections = new Connection[Math.max(1, config.getConnections())];
+    this.reconnectBackoffNanos = TimeUnit.MILLISECONDS.toNanos(config.getReconnectBackoffMs());
+  }
+
+  /**
+   * Whether the last connection attempt failed and none has succeeded since.
+   */
+  boolean isBrokerDown() {
+    return brokerDown;
+  }
+
+  /**
+   * A channel on another connection is working, so the broker is up again.
+   */
+  void channelBorrowed() {
+    if (brokerDown) {
+      brokerDown = false;
+    }
+  }
+
+  @Override
+  public PublisherChannel create() throws Exception {
+    int slot = Math.floorMod(nextConnection.getAndIncrement(), connections.length);
+    Channel channel = connection(slot).createChannel();
+    channel.queueDeclare(config.getQueueName(), true, false, false, null);
+    return new PublisherChannel(channel, config.isConfirmsEnabled(), config.getConfirmWindow(),
+        config.isBinaryFormat());
+  }
+
+  @Override
+  public PooledObject<PublisherChannel> wrap(PublisherChannel channel) {
+    return new DefaultPooledObject<>(channel);
+  }
+
+  @Override
+  public boolean validateObject(PooledObject<PublisherChannel> p) {
+    return p.getObject().isOpen();
+  }
+
+  @Override
+  public void destroyObject(PooledObject<PublisherChannel> p) {
+    p.getObject().close();
+  }
+
+  /**
+   * Close every connection opened by this factory.
+   */
+  synchronized void closeConnections() {
+    for (int i = 0; i < connections.length; i++) {
+      if (connections[i] != null) {
+        try {
+          connections[i].close();
+        } catch (Exception e) {
+          System.err.println("[!] Failed to close RabbitMQ connection: " + e.getMessage());
+        }
+        connections[i] = null;
+      }
+    }
+  }
+
+  private synchronized Connection connection(int slot) throws IOException, TimeoutException {
+    Connection connection = connections[slot];
+    if (connection == null || !connection.isOpen()) {
+      if (brokerDown && System.nanoTime() - retryAfterNanos < 0) {
+        throw new IOException("RabbitMQ unreachable, not reconnecting yet");
+      }
+      if (connection != null) {
+        connection.abort(); // stop any recovery attempts on the dead connection
+        connections[slot] = null;
+      }
+      try {
+        connection = connectionFactory.newConnection("skiersServer-producer-" + slot);
+      } catch (IOException | TimeoutException e) {
+        brokerDown = true;
+        retryAfterNanos = System.nanoTime() + reconnectBackoffNanos;
+        throw e;
+      }
+      brokerDown = false;
+      connections[slot] = connection;
+    }
+    return connection;
+  }
+}
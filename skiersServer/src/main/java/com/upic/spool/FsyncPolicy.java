@@ -0,0 +1,13 @@
+package com.upic.spool;
+
+/**
+ * When spooled records are forced from the page cache to disk.
+ */
+public enum FsyncPolicy {
+  /** Leave it to the OS. Survives a JVM crash, not a power loss. */
+  NONE,
+  /** Force the active segment every {@code spool.fsyncIntervalMs} from a background thread. */
+  INTERVAL,
+  /** Force after every append. Slowest, loses nothing that was acknowledged. */
+  ALWAYS
+}
@@ -0,0 +1,357 @@
+package com.upic.spool;
+
+import com.upic.codec.LiftRideCodec;
+import com.upic.codec.LiftRideMessage;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped spool of lift rides that could not be published in time.
+ *
+ * Records are appended to fixed-size segment files ({@code 0000000000000001.seg}, ...) as
+ * {@code [length:int][crc32:int][payload]}, where the payload is the 21-byte binary record from
+ * {@link LiftRideCodec} (or its JSON form for IDs the binary format cannot carry). A zero length
+ * or a CRC mismatch marks the end of a segment, so a torn write after a crash is simply cut off.
+ * A record that is intact but does not decode is skipped on its own and counted as delivered.
+ *
+ * One replayer reads records in append order with {@link #peek} and acknowledges them with
+ * {@link #commit}; the read position is kept in a small checkpoint file, and segments that have
+ * been read completely are deleted.
+ */
+public class IngestSpool implements AutoCloseable {
+  private static final int RECORD_HEADER_BYTES = 8;
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  // returned by readRecord for an intact record whose payload does not decode
+  private static final LiftRideMessage UNREADABLE = new LiftRideMessage(0, "", "", 0, 0, 0);
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final long maxBytes;
+  private final FsyncPolicy fsyncPolicy;
+
+  // guarded by this
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private final MappedByteBuffer checkpoint;
+  private final FileChannel checkpointChannel;
+  private final byte[] encodeBuffer = new byte[LiftRideCodec.BINARY_RECORD_SIZE];
+  private final CRC32 writeCrc = new CRC32();
+
+  // replayer state: read position and the position after the last peek
+  private Segment readSegment;
+  private int readOffset;
+  private Segment peekSegment;
+  private int peekOffset;
+  private int peekSkipped; // unreadable records passed over by the last peek
+  private final CRC32 readCrc = new CRC32();
+
+  private final AtomicLong pendingRecords = new AtomicLong();
+  private final AtomicLong appendedRecords = new AtomicLong();
+
+  /**
+   * Open (or create) the spool in {@code directory}, recovering anything left from a previous run.
+   */
+  public IngestSpool(Path directory, int segmentBytes, long maxBytes, FsyncPolicy fsyncPolicy) throws IOException {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxBytes = maxBytes;
+    this.fsyncPolicy = fsyncPolicy;
+    Files.createDirectories(directory);
+
+    checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 12);
+    recover();
+  }
+
+  /**
+   * Append one ride.
+   *
+   * @throws SpoolFullException if a new segment would exceed {@code maxBytes}
+   */
+  public synchronized void append(LiftRideMessage message) throws IOException {
+    byte[] payload;
+    int length;
+    if (LiftRideCodec.canEncodeBinary(message)) {
+      payload = encodeBuffer;
+      length = LiftRideCodec.encodeBinary(message, encodeBuffer, 0);
+    } else {
+      payload = LiftRideCodec.encodeJson(message);
+      length = payload.length;
+    }
+
+    Segment segment = segments.peekLast();
+    if (segment == null || segment.writeOffset + RECORD_HEADER_BYTES + length > segmentBytes) {
+      segment = roll(segment);
+    }
+
+    writeCrc.reset();
+    writeCrc.update(payload, 0, length);
+    int offset = segment.writeOffset;
+    segment.buffer.put(offset + RECORD_HEADER_BYTES, payload, 0, length);
+    segment.buffer.putInt(offset + 4, (int) writeCrc.getValue());
+    segment.buffer.putInt(offset, length); // written last: a non-zero length means the record is complete
+    if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+      segment.buffer.force(offset, RECORD_HEADER_BYTES + length);
+    }
+    segment.writeOffset = offset + RECORD_HEADER_BYTES + length;
+    pendingRecords.incrementAndGet();
+    appendedRecords.incrementAndGet();
+  }
+
+  /**
+   * Read up to {@code max} records after the committed position without consuming them.
+   * Only the replayer thread may call this.
+   */
+  public synchronized List<LiftRideMessage> peek(int max) {
+    List<LiftRideMessage> messages = new ArrayList<>(Math.min(max, 1024));
+    Segment segment = readSegment;
+    int offset = readOffset;
+    int skipped = 0;
+    while (segment != null && messages.size() < max) {
+      LiftRideMessage message = readRecord(segment, offset);
+      if (message == null) {
+        // end of this segment; move on only if the writer has moved on too
+        Segment next = nextSegment(segment);
+        if (next == null) {
+          break;
+        }
+        segment = next;
+        offset = 0;
+        continue;
+      }
+      if (message == UNREADABLE) {
+        skipped++;
+      } else {
+        messages.add(message);
+      }
+      offset += RECORD_HEADER_BYTES + segment.buffer.getInt(offset);
+    }
+    peekSegment = segment;
+    peekOffset = offset;
+    peekSkipped = skipped;
+    if (messages.isEmpty() && skipped > 0) {
+      // nothing for the replayer to commit, so step over the unreadable records here
+      advance();
+    }
+    return messages;
+  }
+
+  /**
+   * Mark everything returned by the last {@link #peek} as delivered.
+   */
+  public synchronized void commit(int records) throws IOException {
+    pendingRecords.addAndGet(-records);
+    advance();
+  }
+
+  /**
+   * Move the read position to the end of the last peek, dropping its unreadable records.
+   */
+  private void advance() {
+    readSegment = peekSegment;
+    readOffset = peekOffset;
+    pendingRecords.addAndGet(-peekSkipped);
+    peekSkipped = 0;
+
+    checkpoint.putLong(0, readSegment == null ? 0 : readSegment.id);
+    checkpoint.putInt(8, readOffset);
+    checkpoint.force();
+
+    // segments before the read position are done
+    Iterator<Segment> it = segments.iterator();
+    while (it.hasNext()) {
+      Segment segment = it.next();
+      if (segment == readSegment) {
+        break;
+      }
+      it.remove();
+      segment.delete();
+    }
+  }
+
+  /**
+   * Force the active segment to disk (used by the INTERVAL fsync policy).
+   */
+  public synchronized void force() {
+    Segment segment = segments.peekLast();
+    if (segment != null) {
+      segment.buffer.force();
+    }
+  }
+
+  public long getPendingRecords() {
+    return pendingRecords.get();
+  }
+
+  public long getAppendedRecords() {
+    return appendedRecords.get();
+  }
+
+  public synchronized long getDiskBytes() {
+    return (long) segments.size() * segmentBytes;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (Segment segment : segments) {
+      if (fsyncPolicy != FsyncPolicy.NONE) {
+        segment.buffer.force();
+      }
+      segment.channel.close();
+    }
+    segments.clear();
+    checkpointChannel.close();
+  }
+
+  private Segment roll(Segment current) throws IOException {
+    if (current != null && fsyncPolicy != FsyncPolicy.NONE) {
+      current.buffer.force();
+    }
+    if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+      throw new SpoolFullException("Spool is full (" + maxBytes + " bytes)");
+    }
+    Segment segment = Segment.open(directory, current == null ? 1 : current.id + 1, segmentBytes);
+    segments.addLast(segment);
+    if (readSegment == null) {
+      readSegment = segment;
+      readOffset = 0;
+    }
+    return segment;
+  }
+
+  private Segment nextSegment(Segment segment) {
+    boolean found = false;
+    for (Segment candidate : segments) {
+      if (found) {
+        return candidate;
+      }
+      found = candidate == segment;
+    }
+    return null;
+  }
+
+  /**
+   * @return the record at {@code offset}, {@link #UNREADABLE} if it is intact but does not
+   *     decode, or null at the end of the valid data
+   */
+  private LiftRideMessage readRecord(Segment segment, int offset) {
+    if (offset + RECORD_HEADER_BYTES > segmentBytes) {
+      return null;
+    }
+    int length = segment.buffer.getInt(offset);
+    if (length <= 0 || offset + RECORD_HEADER_BYTES + length > segmentBytes) {
+      return null;
+    }
+    byte[] payload = new byte[length];
+    segment.buffer.get(offset + RECORD_HEADER_BYTES, payload);
+    readCrc.reset();
+    readCrc.update(payload);
+    if ((int) readCrc.getValue() != segment.buffer.getInt(offset + 4)) {
+      return null;
+    }
+    try {
+      return payload[0] == '{'
+          ? LiftRideCodec.decodeJson(payload)
+          : LiftRideCodec.decodeBinary(payload, 0, length);
+    } catch (IOException e) {
+      System.err.println("[!] Skipping unreadable spool record in segment " + segment.id + " at " + offset
+          + ": " + e.getMessage());
+      return UNREADABLE;
+    }
+  }
+
+  /**
+   * Map existing segments, find where valid data ends in each and restore the read position.
+   */
+  private void recover() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    }
+    files.sort(null);
+
+    long checkpointSegment = checkpoint.getLong(0);
+    int checkpointOffset = checkpoint.getInt(8);
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+      if (id < checkpointSegment) {
+        Files.deleteIfExists(file); // fully replayed before the last shutdown
+        continue;
+      }
+      Segment segment = Segment.open(directory, id, segmentBytes);
+      int offset = 0;
+      int start = id == checkpointSegment ? checkpointOffset : 0;
+      LiftRideMessage message;
+      while ((message = readRecord(segment, offset)) != null) {
+        if (offset >= start) {
+          pendingRecords.incrementAndGet();
+        }
+        offset += RECORD_HEADER_BYTES + segment.buffer.getInt(offset);
+      }
+      segment.writeOffset = offset;
+      segments.addLast(segment);
+      if (readSegment == null) {
+        readSegment = segment;
+        readOffset = Math.min(start, offset);
+      }
+    }
+    if (!segments.isEmpty()) {
+      System.out.println("[*] Recovered spool with " + pendingRecords.get() + " pending lift rides in "
+          + segments.size() + " segment(s)");
+    }
+  }
+
+  private static final class Segment {
+    final long id;
+    final Path path;
+    final FileChannel channel;
+    final MappedByteBuffer buffer;
+    int writeOffset; // only written under the spool lock
+
+    private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    static Segment open(Path directory, long id, int size) throws IOException {
+      Path path = directory.resolve(String.format("%016d%s", id, SEGMENT_SUFFIX));
+      try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+        if (file.length() < size) {
+          file.setLength(size); // sparse; unused space reads as zero, i.e. end of data
+        }
+      }
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    void delete() {
+      try {
+        channel.close();
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        System.err.println("[!] Failed to delete spool segment " + path + ": " + e.getMessage());
+      }
+    }
+  }
+}
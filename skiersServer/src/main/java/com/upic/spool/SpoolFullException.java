@@ -0,0 +1,12 @@
+package com.upic.spool;
+
+import java.io.IOException;
+
+/**
+ * The spool has reached {@code spool.maxBytes} and cannot take more records.
+ */
+public class SpoolFullException extends IOException {
+  public SpoolFullException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,111 @@
+package com.upic.spool;
+
+import com.upic.codec.LiftRideMessage;
+import com.upic.queue.MessageQueueProducer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background thread that drains the {@link IngestSpool} back into RabbitMQ, oldest first.
+ *
+ * A batch is only committed once the broker has confirmed every message in it; on failure the
+ * same batch is retried with exponential backoff, so delivery is at-least-once.
+ */
+public class SpoolReplayer implements AutoCloseable {
+  private static final long MAX_BACKOFF_MS = 30000;
+
+  private final IngestSpool spool;
+  private final MessageQueueProducer producer;
+  private final int batchSize;
+  private final long idleIntervalMs;
+  private final long fsyncIntervalMs; // > 0 only for FsyncPolicy.INTERVAL
+  private final Thread thread;
+  private final AtomicLong replayedRecords = new AtomicLong();
+  private volatile boolean running = true;
+
+  public SpoolReplayer(IngestSpool spool, MessageQueueProducer producer, int batchSize, long idleIntervalMs,
+                       long fsyncIntervalMs) {
+    this.spool = spool;
+    this.producer = producer;
+    this.batchSize = batchSize;
+    this.idleIntervalMs = idleIntervalMs;
+    this.fsyncIntervalMs = fsyncIntervalMs;
+    this.thread = new Thread(this::run, "spool-replayer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  public long getReplayedRecords() {
+    return replayedRecords.get();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    thread.interrupt();
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    long backoffMs = idleIntervalMs;
+    long lastForce = System.nanoTime();
+    while (running) {
+      try {
+        if (fsyncIntervalMs > 0 && System.nanoTime() - lastForce >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs)) {
+          spool.force();
+          lastForce = System.nanoTime();
+        }
+
+        if (spool.getPendingRecords() == 0) {
+          Thread.sleep(fsyncIntervalMs > 0 ? Math.min(idleIntervalMs, fsyncIntervalMs) : idleIntervalMs);
+          continue;
+        }
+
+        List<LiftRideMessage> batch = spool.peek(batchSize);
+        if (batch.isEmpty()) {
+          Thread.sleep(idleIntervalMs);
+          continue;
+        }
+        if (replay(batch)) {
+          spool.commit(batch.size());
+          replayedRecords.addAndGet(batch.size());
+          backoffMs = idleIntervalMs;
+        } else {
+          System.err.println("[!] Spool replay failed, retrying " + batch.size() + " lift rides in " + backoffMs + " ms");
+          Thread.sleep(backoffMs);
+          backoffMs = Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        System.err.println("[!] Spool replayer error: " + e.getMessage());
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Publish the batch and wait for every confirm.
+   */
+  private boolean replay(List<LiftRideMessage> batch) throws InterruptedException {
+    List<CompletableFuture<Void>> confirms = producer.publishBatch(batch);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(producer.getConfirmTimeoutMs());
+    for (CompletableFuture<Void> confirm : confirms) {
+      try {
+        confirm.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,107 @@
+package com.upic.spool;
+
+import com.upic.codec.LiftRideMessage;
+import com.upic.model.LiftRide;
+import com.upic.queue.LiftRidePublisher;
+import com.upic.queue.MessageQueueProducer;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes to RabbitMQ, falling back to the local {@link IngestSpool} when the broker does not
+ * confirm within {@code publishTimeoutMs} (or is unreachable). A spooled ride counts as accepted;
+ * the {@link SpoolReplayer} delivers it later.
+ *
+ * Every wait on this path (channel borrow, confirm window, confirm) is bounded by
+ * {@code publishTimeoutMs}. While the last connection attempt to the broker has failed, rides
+ * go straight to the spool; the {@link SpoolReplayer} keeps retrying the connection.
+ *
+ * A ride whose confirm was merely slow may end up both on the queue and in the spool, so
+ * downstream delivery is at-least-once.
+ */
+public class SpoolingPublisher implements LiftRidePublisher {
+  private final MessageQueueProducer producer;
+  private final IngestSpool spool;
+  private final long publishTimeoutMs;
+  private final AtomicLong spooledRecords = new AtomicLong();
+  private final AtomicLong spoolFullRejections = new AtomicLong();
+
+  public SpoolingPublisher(MessageQueueProducer producer, IngestSpool spool, long publishTimeoutMs) {
+    this.producer = producer;
+    this.spool = spool;
+    this.publishTimeoutMs = publishTimeoutMs;
+  }
+
+  @Override
+  public void sendMessage(LiftRide liftRide, int resortID, String seasonID, String dayID, int skierID)
+      throws IOException {
+    LiftRideMessage message = new LiftRideMessage(resortID, seasonID, dayID, skierID,
+        liftRide.getTime(), liftRide.getLiftID());
+    if (producer.isBrokerDown()) {
+      spool(message);
+      return;
+    }
+    try {
+      producer.publishAsync(message, publishTimeoutMs).get(publishTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for publisher confirm", e);
+    } catch (ExecutionException | TimeoutException e) {
+      spool(message);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> publishAsync(LiftRide liftRide, int resortID, String seasonID, String dayID,
+                                              int skierID) {
+    LiftRideMessage message = new LiftRideMessage(resortID, seasonID, dayID, skierID,
+        liftRide.getTime(), liftRide.getLiftID());
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    if (producer.isBrokerDown()) {
+      try {
+        spool(message);
+        result.complete(null);
+      } catch (IOException e) {
+        result.completeExceptionally(e);
+      }
+      return result;
+    }
+    producer.publishAsync(message, publishTimeoutMs)
+        .orTimeout(publishTimeoutMs, TimeUnit.MILLISECONDS)
+        .whenComplete((ignored, error) -> {
+          if (error == null) {
+            result.complete(null);
+            return;
+          }
+          try {
+            spool(message);
+            result.complete(null);
+          } catch (IOException e) {
+            result.completeExceptionally(e);
+          }
+        });
+    return result;
+  }
+
+  public long getSpooledRecords() {
+    return spooledRecords.get();
+  }
+
+  public long getSpoolFullRejections() {
+    return spoolFullRejections.get();
+  }
+
+  private void spool(LiftRideMessage message) throws IOException {
+    try {
+      spool.append(message);
+      spooledRecords.incrementAndGet();
+    } catch (SpoolFullException e) {
+      spoolFullRejections.incrementAndGet();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.upic.server;
+
+import com.upic.api.CacheStatsServlet;
+import com.upic.api.HealthCheckServlet;
+import com.upic.api.MetricsServlet;
+import com.upic.api.SkierServlet;
+import com.upic.config.ConfigProperties;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Servlet;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+
+/**
+ * Runs the skiersServer servlets in an embedded Tomcat, without a WAR or an external container.
+ *
+ * The servlets and URL mappings are the same as in web/WEB-INF/web.xml. On JDK 21+ each request
+ * runs on its own virtual thread, so blocking on DynamoDB or a RabbitMQ confirm is cheap; on
+ * older JDKs a bounded platform thread pool is used instead.
+ *
+ * Build with {@code mvn -Pstandalone package} and run
+ * {@code java -jar target/skiersServer-1.0-SNAPSHOT-standalone.jar}.
+ */
+public final class StandaloneServer {
+  private static final String[] SKIER_SERVLET_PARAMS = {
+      "ingestMode", "publishQueueCapacity", "publisherThreads", "asyncTimeoutMs",
+      "maxBatchRecords", "batchConfirmTimeoutMs", "maxDayPageSize",
+      "compressMinBytes", "gzipPoolSize", "gzipLevel"};
+
+  private StandaloneServer() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    long startNanos = System.nanoTime();
+    ConfigProperties config = ConfigProperties.load("standalone.properties");
+
+    Tomcat tomcat = new Tomcat();
+    File baseDir = Files.createTempDirectory("skiers-tomcat").toFile();
+    baseDir.deleteOnExit();
+    tomcat.setBaseDir(baseDir.getAbsolutePath());
+
+    ExecutorService executor = buildExecutor(config);
+    Connector connector = new Connector("org.apache.coyote.http11.Http11NioProtocol");
+    connector.setPort(config.getInt("server.port", 8080));
+    AbstractProtocol<?> protocol = (AbstractProtocol<?>) connector.getProtocolHandler();
+    protocol.setExecutor(executor);
+    protocol.setMaxConnections(config.getInt("server.maxConnections", 20000));
+    protocol.setAcceptCount(config.getInt("server.acceptCount", 1000));
+    protocol.setConnectionTimeout(config.getInt("server.connectionTimeoutMs", 20000));
+    protocol.setKeepAliveTimeout(config.getInt("server.keepAliveTimeoutMs", 60000));
+    tomcat.setConnector(connector);
+
+    Context context = tomcat.addContext(config.getString("server.contextPath", ""), baseDir.getAbsolutePath());
+
+    Wrapper skierServlet = addServlet(context, "SkierServlet", new SkierServlet(), "/skiers/*", "/resorts/*");
+    skierServlet.setAsyncSupported(true);
+    skierServlet.setLoadOnStartup(1); // open DynamoDB/RabbitMQ pools before the first request
+    for (String name : SKIER_SERVLET_PARAMS) {
+      String value = config.getString("skierServlet." + name, null);
+      if (value != null) {
+        skierServlet.addInitParameter(name, value);
+      }
+    }
+    addServlet(context, "HealthCheckServlet", new HealthCheckServlet(), "/healthcheck");
+    addServlet(context, "MetricsServlet", new MetricsServlet(), "/metrics");
+    addServlet(context, "CacheStatsServlet", new CacheStatsServlet(), "/cache-stats");
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(tomcat, executor), "standalone-shutdown"));
+
+    tomcat.start();
+    System.out.println("[*] skiersServer listening on port " + connector.getLocalPort() + " in "
+        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+    tomcat.getServer().await();
+  }
+
+  private static Wrapper addServlet(Context context, String name, Servlet servlet, String... patterns) {
+    Wrapper wrapper = Tomcat.addServlet(context, name, servlet);
+    for (String pattern : patterns) {
+      context.addServletMappingDecoded(pattern, name);
+    }
+    return wrapper;
+  }
+
+  /**
+   * Virtual thread per request on JDK 21+ (looked up reflectively so the code still builds on
+   * JDK 17), otherwise a fixed pool of platform threads.
+   */
+  private static ExecutorService buildExecutor(ConfigProperties config) {
+    if (config.getBoolean("server.virtualThreads", true)) {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        System.out.println("[*] Using virtual threads for request handling");
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        System.out.println("[*] Virtual threads need JDK 21+, using a platform thread pool");
+      }
+    }
+    int maxThreads = config.getInt("server.maxThreads", 200);
+    return Executors.newFixedThreadPool(maxThreads, runnable -> {
+      Thread thread = new Thread(runnable, "http-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static void stop(Tomcat tomcat, ExecutorService executor) {
+    try {
+      tomcat.stop();
+      tomcat.destroy();
+    } catch (LifecycleException e) {
+      System.err.println("[!] Failed to stop embedded Tomcat: " + e.getMessage());
+    }
+    executor.shutdown();
+  }
+}